@@ -0,0 +1,145 @@
+package com.adobe.aep.metrics;
+
+import com.adobe.aep.metrics.dispatch.BatchLimits;
+import com.adobe.aep.metrics.dispatch.MetricBatch;
+import com.adobe.aep.metrics.dispatch.MetricBatcher;
+import com.adobe.aep.metrics.encode.EncodedPayload;
+import com.adobe.aep.metrics.encode.SnappyCompressor;
+import com.adobe.aep.metrics.encode.WriteRequestEncoder;
+import com.adobe.aep.metrics.parse.MetricStreamParser;
+import com.adobe.aep.metrics.parse.StringCache;
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage a batch goes through in the handler, on a single record of synthetic DynamoDB metrics:
+ * parsing the NDJSON, aggregating the items into series, encoding the request and compressing it. Signing is covered
+ * by {@link AwsV4SignerBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final String RECORD_ID = "00000000";
+    // Large enough for the whole record to end up in a single batch
+    private static final BatchLimits UNLIMITED = new BatchLimits(Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    @Param({"1000", "5000"})
+    public int series;
+
+    @Param({"1", "5"})
+    public int samplesPerSeries;
+
+    private ByteBuffer data;
+    private MetricStreamParser parser;
+    private ObjectMapper objectMapper;
+    private List<CloudWatchStreamMetric> metrics;
+    private WriteRequestEncoder encoder;
+    private MetricBatch batch;
+    private byte[] uncompressed;
+    private ByteBuffer directUncompressed;
+    private ByteBuffer directCompressed;
+
+    @Setup
+    public void setup() throws IOException {
+        MetricStreamGenerator generator = new MetricStreamGenerator(series, samplesPerSeries, 42);
+        byte[] ndjson = generator.ndjson();
+        data = ByteBuffer.wrap(ndjson);
+        objectMapper = new ObjectMapper();
+        parser = new MetricStreamParser(objectMapper.getFactory(), new StringCache());
+        metrics = generator.metrics();
+        encoder = new WriteRequestEncoder();
+        batch = aggregate();
+        try (EncodedPayload payload = encoder.encode(batch.series())) {
+            ByteBuffer body = payload.body();
+            byte[] compressed = new byte[body.remaining()];
+            body.get(compressed);
+            uncompressed = Snappy.uncompress(compressed);
+        }
+        directUncompressed = ByteBuffer.allocateDirect(uncompressed.length).put(uncompressed).flip();
+        directCompressed = ByteBuffer.allocateDirect(Snappy.maxCompressedLength(uncompressed.length));
+    }
+
+    /**
+     * Streams the items out of the record data in place.
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException {
+        try (MetricStreamParser.Reader reader = parser.open(data)) {
+            CloudWatchStreamMetric metric;
+            while ((metric = reader.next()) != null) {
+                blackhole.consume(metric);
+            }
+        }
+    }
+
+    /**
+     * The original parsing: the record is decoded to a string, split into lines and each line is bound by the
+     * `ObjectMapper`.
+     */
+    @Benchmark
+    public void parseObjectMapper(Blackhole blackhole) throws IOException {
+        for (String line : StandardCharsets.UTF_8.decode(data.duplicate()).toString().split("\n")) {
+            blackhole.consume(objectMapper.readValue(line, CloudWatchStreamMetric.class));
+        }
+    }
+
+    /**
+     * Collects the parsed items into series, estimating the size of the batch along the way.
+     */
+    @Benchmark
+    public MetricBatch aggregate() {
+        MetricBatcher batcher = new MetricBatcher(encoder, UNLIMITED);
+        for (CloudWatchStreamMetric metric : metrics) {
+            batcher.add(metric, RECORD_ID);
+        }
+        return batcher.flush();
+    }
+
+    /**
+     * Writes the `WriteRequest` of the batch and compresses it, which the encoder does in one go.
+     */
+    @Benchmark
+    public int encode() throws IOException {
+        try (EncodedPayload payload = encoder.encode(batch.series())) {
+            return payload.size();
+        }
+    }
+
+    /**
+     * Compresses the encoded request between direct buffers, as the encoder does.
+     */
+    @Benchmark
+    public int compress() throws IOException {
+        return Snappy.compress(directUncompressed.duplicate(), directCompressed.clear());
+    }
+
+    /**
+     * Compresses the encoded request between direct buffers with the pure Java compressor, see `SNAPPY_PURE_JAVA`.
+     */
+    @Benchmark
+    public int compressPureJava() throws IOException {
+        return SnappyCompressor.pureJava().compress(directUncompressed.duplicate(), directCompressed.clear());
+    }
+
+    /**
+     * The original compression of the encoded request, from one array into a new one.
+     */
+    @Benchmark
+    public byte[] compressArray() throws IOException {
+        return Snappy.compress(uncompressed);
+    }
+}
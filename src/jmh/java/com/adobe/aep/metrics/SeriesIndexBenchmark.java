@@ -0,0 +1,73 @@
+package com.adobe.aep.metrics;
+
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.adobe.aep.metrics.records.Value;
+import com.adobe.aep.metrics.series.CloudWatchUnit;
+import com.adobe.aep.metrics.series.Series;
+import com.adobe.aep.metrics.series.SeriesIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares collecting a batch into series with {@link SeriesIndex} against the nested `groupingBy` by account, metric
+ * name and dimensions it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SeriesIndexBenchmark {
+
+    @Param({"1000", "5000"})
+    public int series;
+
+    @Param({"1", "5"})
+    public int samplesPerSeries;
+
+    private List<CloudWatchStreamMetric> metrics;
+
+    @Setup
+    public void setup() {
+        metrics = new ArrayList<>(new MetricStreamGenerator(series, samplesPerSeries, 42).metrics());
+        Collections.shuffle(metrics, new Random(42));
+    }
+
+    @Benchmark
+    public void seriesIndex(Blackhole blackhole) {
+        SeriesIndex index = new SeriesIndex(metrics.size());
+        for (CloudWatchStreamMetric metric : metrics) {
+            Series series = index.get(metric.accountId(), metric.namespace(), metric.metricName(),
+                    CloudWatchUnit.of(metric.unit()), metric.dimensions());
+            Value value = metric.value();
+            series.add(metric.timestamp(), value.min(), value.max(), value.sum(), value.count());
+        }
+        for (Series series : index.series()) {
+            blackhole.consume(series.size());
+        }
+    }
+
+    @Benchmark
+    public void groupingBy(Blackhole blackhole) {
+        metrics.stream()
+                .collect(Collectors.groupingBy(CloudWatchStreamMetric::accountId))
+                .forEach((accountId, accountGroupedMetrics) -> accountGroupedMetrics.stream()
+                        .collect(Collectors.groupingBy(CloudWatchStreamMetric::metricName))
+                        .forEach((metricName, nameGroupedMetrics) -> nameGroupedMetrics.stream()
+                                .collect(Collectors.groupingBy(CloudWatchStreamMetric::dimensions))
+                                .forEach((dimensions, dimensionGroupedMetrics) -> {
+                                    for (CloudWatchStreamMetric metric : dimensionGroupedMetrics) {
+                                        blackhole.consume(metric.timestamp());
+                                        blackhole.consume(metric.value());
+                                    }
+                                })));
+    }
+}
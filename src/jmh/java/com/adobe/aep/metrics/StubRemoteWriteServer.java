@@ -0,0 +1,57 @@
+package com.adobe.aep.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local remote_write endpoint which accepts and discards every request, so the handler can be measured end to end
+ * without AWS access. The signature is not verified.
+ */
+public final class StubRemoteWriteServer implements Closeable {
+
+    private final HttpServer server;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public StubRemoteWriteServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                bytes.addAndGet(body.transferTo(OutputStream.nullOutputStream()));
+            }
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    /**
+     * @return The URL the writer should post to
+     */
+    public URI uri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1/remote_write");
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long bytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
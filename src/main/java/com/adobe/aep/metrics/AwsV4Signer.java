@@ -0,0 +1,248 @@
+package com.adobe.aep.metrics;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Signs remote_write requests with AWS Signature Version 4 for a single host, path and service.
+ *
+ * This produces the same signature as the step by step computation with {@link AwsV4SigningUtils}, but is meant for
+ * the hot path:
+ * - The derived signing key only depends on the date, region, service and secret, so it is computed once and reused
+ *   until the date or the credentials change, rather than running four HMAC rounds per request.
+ * - The `Mac` and `MessageDigest` instances and the buffers the canonical strings are built in are reused. They are
+ *   kept in a small pool rather than in thread locals because batches are signed on short-lived virtual threads.
+ * - Digests are hex encoded through a lookup table.
+ */
+public class AwsV4Signer {
+
+    private static final String METHOD = "POST";
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String API_KEY = "";
+    private static final String SIGNED_HEADERS = "content-type;host;x-amz-content-sha256;x-amz-date;x-api-key";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'", Locale.US)
+            .withZone(ZoneOffset.UTC);
+
+    private final String region;
+    private final String service;
+    private final String host;
+    private final String path;
+    private final String contentType;
+
+    private final ConcurrentLinkedQueue<SigningContext> contexts = new ConcurrentLinkedQueue<>();
+    private volatile SigningKey signingKey;
+
+    public AwsV4Signer(String region, String service, String host, String path, String contentType) {
+        this.region = region;
+        this.service = service;
+        this.host = host;
+        this.path = path;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Signs a request carrying the given payload.
+     *
+     * @param credentials The credentials to sign with, a session token is added for session credentials
+     * @param timestamp The time of the request
+     * @param payload The request body exactly as it will be sent
+     * @return The headers carrying the signature, to be added to the request
+     */
+    public Map<String, String> sign(AwsCredentials credentials, Instant timestamp, byte[] payload) {
+        return sign(credentials, timestamp, ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Signs a request carrying the remaining bytes of the given buffer, without moving its position.
+     *
+     * @param credentials The credentials to sign with, a session token is added for session credentials
+     * @param timestamp The time of the request
+     * @param payload The request body exactly as it will be sent
+     * @return The headers carrying the signature, to be added to the request
+     */
+    public Map<String, String> sign(AwsCredentials credentials, Instant timestamp, ByteBuffer payload) {
+        String amzDate = dateFormat.format(timestamp);
+        String dateStamp = amzDate.substring(0, 8);
+        SigningKey key = signingKey(credentials, dateStamp);
+
+        SigningContext context = acquire();
+        try {
+            context.digest.update(payload.duplicate());
+            String payloadHash = context.hex(context.digest.digest());
+
+            // CanonicalHeaders:
+            // - "For the purpose of calculating an authorization signature, only the host and any x-amz-* headers
+            //      are required; however, in order to prevent data tampering, you should consider including all
+            //      the headers in the signature calculation."
+            // - "must appear in alphabetical order" / "sorted by header name"
+            // - "lowercase with values trimmed"
+            // - "If the Content-Type header is present in the request, you must add it to the CanonicalHeaders list. "
+            // - The last header is also \n terminated
+            StringBuilder buffer = context.buffer();
+            buffer.append(METHOD).append('\n')
+                    .append(path).append('\n')
+                    .append('\n')
+                    .append("content-type:").append(contentType).append('\n')
+                    .append("host:").append(host).append('\n')
+                    .append("x-amz-content-sha256:").append(payloadHash).append('\n')
+                    .append("x-amz-date:").append(amzDate).append('\n')
+                    .append("x-api-key:").append(API_KEY).append('\n')
+                    .append('\n')
+                    .append(SIGNED_HEADERS).append('\n')
+                    .append(payloadHash);
+            String hashedCanonicalRequest = context.hex(context.sha256(buffer));
+
+            buffer = context.buffer();
+            buffer.append(ALGORITHM).append('\n')
+                    .append(amzDate).append('\n')
+                    .append(key.credentialScope).append('\n')
+                    .append(hashedCanonicalRequest);
+            String signature = context.hex(context.hmacSha256(key.key, buffer));
+
+            buffer = context.buffer();
+            buffer.append(ALGORITHM)
+                    .append(" Credential=").append(credentials.accessKeyId()).append('/').append(key.credentialScope)
+                    .append(", SignedHeaders=").append(SIGNED_HEADERS)
+                    .append(", Signature=").append(signature);
+
+            Map<String, String> headers = new LinkedHashMap<>();
+            headers.put("host", host);
+            headers.put("x-amz-date", amzDate);
+            if (credentials instanceof AwsSessionCredentials session) {
+                headers.put("x-amz-security-token", session.sessionToken());
+            }
+            headers.put("x-amz-content-sha256", payloadHash);
+            headers.put("Authorization", buffer.toString());
+            return headers;
+        } finally {
+            contexts.offer(context);
+        }
+    }
+
+    /**
+     * Drops the cached signing key, so the next request derives a new one.
+     */
+    public void invalidate() {
+        signingKey = null;
+    }
+
+    private SigningKey signingKey(AwsCredentials credentials, String dateStamp) {
+        SigningKey key = signingKey;
+        if (key != null && key.dateStamp.equals(dateStamp) && key.secretAccessKey.equals(credentials.secretAccessKey())) {
+            return key;
+        }
+        // Racing threads may both derive the key around midnight, which is harmless since they derive the same one
+        byte[] derivedKey;
+        try {
+            derivedKey = AwsV4SigningUtils.getSignatureKey(credentials.secretAccessKey(), dateStamp, region, service);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Error: HmacSHA256 algorithm not available", e);
+        }
+        key = new SigningKey(dateStamp, credentials.secretAccessKey(), derivedKey,
+                dateStamp + "/" + region + "/" + service + "/aws4_request");
+        signingKey = key;
+        return key;
+    }
+
+    private SigningContext acquire() {
+        SigningContext context = contexts.poll();
+        return context != null ? context : new SigningContext();
+    }
+
+    private record SigningKey(String dateStamp, String secretAccessKey, byte[] key, String credentialScope) {
+    }
+
+    /**
+     * The reusable state for signing one request at a time.
+     */
+    private static final class SigningContext {
+        private final Mac mac;
+        private final MessageDigest digest;
+        private final StringBuilder buffer = new StringBuilder(512);
+        private final char[] hex = new char[64];
+        private byte[] bytes = new byte[512];
+        private byte[] macKey;
+
+        SigningContext() {
+            try {
+                this.mac = Mac.getInstance("HmacSHA256");
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Error: SHA-256 algorithms not available", e);
+            }
+        }
+
+        StringBuilder buffer() {
+            buffer.setLength(0);
+            return buffer;
+        }
+
+        byte[] sha256(CharSequence value) {
+            digest.update(bytes, 0, encode(value));
+            return digest.digest();
+        }
+
+        byte[] hmacSha256(byte[] key, CharSequence value) {
+            // Requests are signed with the same key all day, so only initialize the mac when it changes
+            if (macKey != key) {
+                try {
+                    mac.init(new SecretKeySpec(key, "HmacSHA256"));
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Error: Invalid key for HmacSHA256", e);
+                }
+                macKey = key;
+            }
+            mac.update(bytes, 0, encode(value));
+            return mac.doFinal();
+        }
+
+        /**
+         * Writes the UTF-8 encoding of the value into the reused byte buffer, and returns its length.
+         */
+        private int encode(CharSequence value) {
+            int length = value.length();
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    // Everything we sign is ASCII, but don't produce a wrong signature if that ever changes
+                    byte[] encoded = value.toString().getBytes(StandardCharsets.UTF_8);
+                    if (bytes.length < encoded.length) {
+                        bytes = new byte[encoded.length];
+                    }
+                    System.arraycopy(encoded, 0, bytes, 0, encoded.length);
+                    return encoded.length;
+                }
+                bytes[i] = (byte) c;
+            }
+            return length;
+        }
+
+        String hex(byte[] value) {
+            char[] chars = value.length * 2 <= hex.length ? hex : new char[value.length * 2];
+            for (int i = 0; i < value.length; i++) {
+                chars[2 * i] = HEX_DIGITS[(value[i] >> 4) & 0x0f];
+                chars[2 * i + 1] = HEX_DIGITS[value[i] & 0x0f];
+            }
+            return new String(chars, 0, value.length * 2);
+        }
+    }
+}
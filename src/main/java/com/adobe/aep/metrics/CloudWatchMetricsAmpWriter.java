@@ -1,360 +1,487 @@
 package com.adobe.aep.metrics;
 
+import com.adobe.aep.metrics.credentials.RefreshingCredentialsProvider;
+import com.adobe.aep.metrics.dispatch.BatchDispatcher;
+import com.adobe.aep.metrics.dispatch.BatchLimits;
+import com.adobe.aep.metrics.dispatch.DeliveryFailure;
+import com.adobe.aep.metrics.dispatch.MetricBatch;
+import com.adobe.aep.metrics.dispatch.MetricBatcher;
+import com.adobe.aep.metrics.dispatch.Retrier;
+import com.adobe.aep.metrics.dispatch.RetryPolicy;
+import com.adobe.aep.metrics.encode.BufferPool;
+import com.adobe.aep.metrics.encode.EncodedPayload;
+import com.adobe.aep.metrics.encode.MetadataCache;
+import com.adobe.aep.metrics.encode.MetricNamer;
+import com.adobe.aep.metrics.encode.NamingPolicy;
+import com.adobe.aep.metrics.encode.SnappyCompressor;
+import com.adobe.aep.metrics.encode.WriteRequestEncoder;
+import com.adobe.aep.metrics.parse.MetricStreamParser;
+import com.adobe.aep.metrics.parse.StringCache;
 import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.adobe.aep.metrics.relabel.Relabeler;
+import com.adobe.aep.metrics.relabel.SeriesLimiter;
+import com.adobe.aep.metrics.series.AggregationWindow;
+import com.adobe.aep.metrics.server.IngestServer;
+import com.adobe.aep.metrics.server.ServerConfig;
+import com.adobe.aep.metrics.spill.SpillConfig;
+import com.adobe.aep.metrics.spill.SpillStore;
+import com.adobe.aep.metrics.startup.CheckpointHooks;
+import com.adobe.aep.metrics.startup.Primer;
+import com.adobe.aep.metrics.telemetry.InvocationMetrics;
+import com.adobe.aep.metrics.telemetry.MetricsSink;
+import com.adobe.aep.metrics.transport.RemoteWriteResponse;
+import com.adobe.aep.metrics.transport.RemoteWriteTransport;
+import com.adobe.aep.metrics.transport.TransportConfig;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.KinesisFirehoseEvent;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xerial.snappy.Snappy;
-import prometheus.Remote;
-import prometheus.Types;
-import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 
 import java.io.IOException;
 import java.net.URI;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.security.NoSuchAlgorithmException;
-import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
-
-import static com.adobe.aep.metrics.AwsV4SigningUtils.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 public class CloudWatchMetricsAmpWriter implements RequestHandler<KinesisFirehoseEvent, FirehoseEventProcessingResult> {
 
-    private static final int MAX_BATCH_SIZE = 500;
-    private static final String METHOD = "POST";
+    static {
+        // SLF4J Simple Logger reads its configuration once, when the first logger is created, so this has to run
+        // before any logger of the handler is. Valid values are: trace, debug, info, warn, error, off
+        String logLevel = Environment.get("LOG_LEVEL", "");
+        if (!logLevel.isEmpty()) {
+            System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", logLevel.toLowerCase());
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(CloudWatchMetricsAmpWriter.class);
+
+    private static final int DEFAULT_MAX_IN_FLIGHT_BATCHES = 4;
     private static final String SERVICE = "aps";
-    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
     private static final String CONTENT_TYPE = "application/x-protobuf";
     private static final String CONTENT_ENCODING = "snappy";
-    private static final String API_KEY = "";
 
     private final String awsRegion;
     private final String ampWorkspaceId;
     private final String restApiHost;
     private final String restApiPath;
-    private final String restApiEndpoint;
+    private final URI restApiEndpoint;
+
+    // Kept across warm invocations, so the vocabulary of the metric stream is only allocated once
+    private final MetricStreamParser parser = new MetricStreamParser(new JsonFactory(), new StringCache());
+    private final RefreshingCredentialsProvider credentialsProvider;
+    private final AwsV4Signer signer;
+    private final RemoteWriteTransport transport;
+    private final ExecutorService sendExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int maxInFlightBatches;
+    private final BatchLimits batchLimits;
+    private final AggregationWindow aggregationWindow;
+    // Kept across warm invocations, so the rules are only compiled once for every namespace
+    private final Relabeler relabeler;
+    private final int maxSeriesPerFamily;
+    // Kept across warm invocations, so the pooled buffers and the sanitized names are reused
+    private final WriteRequestEncoder encoder = new WriteRequestEncoder(new BufferPool(),
+            new MetricNamer(NamingPolicy.fromEnvironment()), MetadataCache.fromEnvironment(),
+            SnappyCompressor.fromEnvironment());
+    private final Retrier retrier;
+    private final MetricsSink metricsSink;
+    // Kept across warm invocations, requests which could not be delivered are replayed by the next invocation
+    private final SpillStore spillStore;
+    // Requests handled concurrently in server mode share a single replay of the spill store
+    private final AtomicReference<CompletableFuture<Void>> spillReplay = new AtomicReference<>(CompletableFuture.completedFuture(null));
+    // The share of invocations which log their record payloads and response, logging every one is far too costly
+    private final double payloadLogSampleRate;
+    private final Primer primer;
+    // Referenced for as long as the writer lives, as the checkpoint context only holds it weakly
+    private final CheckpointHooks checkpointHooks;
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-    private final AwsSessionCredentials credentials;
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'", Locale.US);
-    private final String metricNameLabel = "__name__";
-    private final String metricAccountLabel = "account";
+    public CloudWatchMetricsAmpWriter() {
+        // The default provider chain is only built when the credentials are first resolved
+        this(Environment.get("REGION"), Environment.get("WORKSPACE_ID"),
+                RefreshingCredentialsProvider.fromEnvironment(() -> DefaultCredentialsProvider.create().resolveCredentials()),
+                RemoteWriteTransport.create(TransportConfig.fromEnvironment()));
+    }
 
-    private final Logger logger = LoggerFactory.getLogger(CloudWatchMetricsAmpWriter.class);
+    /**
+     * Creates a writer which delivers batches through the given transport. The transport is owned by the writer and
+     * reused for every batch for as long as the container stays warm.
+     *
+     * @param awsRegion The region of the AMP workspace
+     * @param ampWorkspaceId The id of the AMP workspace
+     * @param credentialsProvider The provider of the credentials the requests are signed with
+     * @param transport The transport used to post the remote_write requests
+     */
+    public CloudWatchMetricsAmpWriter(String awsRegion, String ampWorkspaceId,
+                                      RefreshingCredentialsProvider credentialsProvider, RemoteWriteTransport transport) {
+        this(awsRegion, ampWorkspaceId, credentialsProvider, transport, MetricsSink.fromEnvironment());
+    }
 
-    public CloudWatchMetricsAmpWriter() {
-        this.awsRegion = getEnvVar("REGION");
-        this.ampWorkspaceId = getEnvVar("WORKSPACE_ID");
+    /**
+     * Creates a writer which delivers batches through the given transport, and emits the metrics of every invocation
+     * to the given sink.
+     *
+     * @param awsRegion The region of the AMP workspace
+     * @param ampWorkspaceId The id of the AMP workspace
+     * @param credentialsProvider The provider of the credentials the requests are signed with
+     * @param transport The transport used to post the remote_write requests
+     * @param metricsSink The sink the metrics of every invocation are emitted to
+     */
+    public CloudWatchMetricsAmpWriter(String awsRegion, String ampWorkspaceId,
+                                      RefreshingCredentialsProvider credentialsProvider, RemoteWriteTransport transport,
+                                      MetricsSink metricsSink) {
+        this.awsRegion = awsRegion;
+        this.ampWorkspaceId = ampWorkspaceId;
         this.restApiHost = String.format("aps-workspaces.%s.amazonaws.com", awsRegion);
         this.restApiPath = String.format("/workspaces/%s/api/v1/remote_write", ampWorkspaceId);
-        this.restApiEndpoint = String.format("https://%s%s", restApiHost, restApiPath);
-        this.credentials = (AwsSessionCredentials) DefaultCredentialsProvider.create().resolveCredentials();
-        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        String logLevel = System.getenv("LOG_LEVEL");
-        if (logLevel != null && !logLevel.isEmpty()) {
-            // Set the system property for SLF4J Simple Logger
-            // Valid values are: trace, debug, info, warn, error, off
-            System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", logLevel.toLowerCase());
+        // The endpoint can be overridden to point the writer at a local stub server, the signature is still
+        // computed for the real AMP host
+        this.restApiEndpoint = URI.create(Environment.get("REMOTE_WRITE_ENDPOINT",
+                String.format("https://%s%s", restApiHost, restApiPath)));
+        this.signer = new AwsV4Signer(awsRegion, SERVICE, restApiHost, restApiPath, CONTENT_TYPE);
+        this.transport = transport;
+        this.maxInFlightBatches = Environment.getInt("MAX_IN_FLIGHT_BATCHES", DEFAULT_MAX_IN_FLIGHT_BATCHES);
+        this.batchLimits = BatchLimits.fromEnvironment();
+        this.aggregationWindow = AggregationWindow.fromEnvironment();
+        this.relabeler = Relabeler.fromEnvironment();
+        this.maxSeriesPerFamily = Environment.getInt("SERIES_LIMIT_PER_FAMILY", 0);
+        this.retrier = new Retrier(RetryPolicy.fromEnvironment(), transport.maxPostMillis(), Clock.systemUTC());
+        this.metricsSink = metricsSink;
+        this.spillStore = openSpillStore(SpillConfig.fromEnvironment());
+        this.payloadLogSampleRate = Environment.getDouble("PAYLOAD_LOG_SAMPLE_RATE", 0);
+        // Credentials are resolved lazily and refreshed in the background, a new key invalidates the signing key
+        this.credentialsProvider = credentialsProvider;
+        AwsV4Signer rotatedSigner = signer;
+        this.credentialsProvider.onRotation(credentials -> rotatedSigner.invalidate());
+
+        this.primer = new Primer(parser, encoder, batchLimits, aggregationWindow, relabeler, maxSeriesPerFamily,
+                signer, credentialsProvider);
+        this.checkpointHooks = CheckpointHooks.register(primer, transport, credentialsProvider);
+        if (Environment.getBoolean("PRIME_ON_INIT", false)) {
+            primer.prime();
         }
     }
 
+    /**
+     * Runs the writer as a standalone server, see {@link IngestServer}.
+     */
+    public static void main(String[] args) throws IOException {
+        IngestServer server = new IngestServer(new CloudWatchMetricsAmpWriter(), ServerConfig.fromEnvironment());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+    }
+
+    /**
+     * Runs a single synthetic item through parsing, batching, encoding, compression and signing without sending it,
+     * and resolves the credentials, so the classes of the send path are loaded and initialized before the first
+     * invocation needs them. Run on init with `PRIME_ON_INIT`, and before a checkpoint is taken.
+     */
+    public void prime() {
+        primer.prime();
+    }
+
     @Override
     public FirehoseEventProcessingResult handleRequest(KinesisFirehoseEvent firehoseEvent, Context context) {
 
-        List<FirehoseEventProcessingResult.Record> responseRecords = new ArrayList<>();
-        List<CloudWatchStreamMetric> batchMetrics = new ArrayList<>();
+        // Retries must leave enough time to report the outcome of every record back to Firehose
+        long deadlineMillis = System.currentTimeMillis() + context.getRemainingTimeInMillis();
+        InvocationMetrics metrics = new InvocationMetrics();
+        boolean logPayloads = payloadLogSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < payloadLogSampleRate;
+        CompletableFuture<Void> replay = replaySpilled(deadlineMillis);
+        BatchDispatcher dispatcher = new BatchDispatcher(sendExecutor, maxInFlightBatches, batch -> {
+            // Spilled requests hold older samples, which are rejected once newer ones of the same series are written
+            awaitReplay(replay, deadlineMillis);
+            return sendMetricBatch(batch, deadlineMillis, metrics);
+        });
+        SeriesLimiter limiter = new SeriesLimiter(maxSeriesPerFamily);
+        MetricBatcher batcher = new MetricBatcher(encoder, batchLimits, aggregationWindow, relabeler, limiter);
+        List<ParsedRecord> parsedRecords = new ArrayList<>();
+        boolean interrupted = false;
         for (KinesisFirehoseEvent.Record record : firehoseEvent.getRecords()) {
-            context.getLogger().log(String.format("Received record %s", record.getRecordId()));
-            String recordData = new String(record.getData().array(), StandardCharsets.UTF_8);
-            context.getLogger().log(String.format("Record data: %s", recordData));
+            logger.debug("Received record {}", record.getRecordId());
+            ByteBuffer recordData = record.getData();
+            if (logPayloads) {
+                context.getLogger().log(String.format("Record %s data: %s", record.getRecordId(), StandardCharsets.UTF_8.decode(recordData.duplicate())));
+            }
 
-            try {
-                boolean success = true;
-                ArrayList<String> tally = new ArrayList<>();
-                for (String metricData : recordData.split("\n")) {
-                    CloudWatchStreamMetric metric = objectMapper.readValue(metricData, CloudWatchStreamMetric.class);
-                    tally.add(metric.metricName());
-                    batchMetrics.add(metric);
-                    if (batchMetrics.size() >= MAX_BATCH_SIZE) {
-                        context.getLogger().log(String.format("Max batch size reached, sending %d metrics", batchMetrics.size()));
-                        success = sendMetricBatch(batchMetrics, context);
-                        if (!success) {
-                            break;
-                        }
-                        batchMetrics.clear();
+            if (interrupted) {
+                parsedRecords.add(new ParsedRecord(record.getRecordId(), recordData, "Interrupted before the record was sent."));
+                continue;
+            }
+            long parseStart = System.nanoTime();
+            long dispatchNanos = 0;
+            try (MetricStreamParser.Reader reader = parser.open(recordData)) {
+                int parsed = 0;
+                CloudWatchStreamMetric metric;
+                while ((metric = reader.next()) != null) {
+                    parsed++;
+                    MetricBatch full = batcher.add(metric, record.getRecordId());
+                    if (full != null) {
+                        logger.debug("Batch limit reached, sending {} series with {} samples", full.size(), full.samples());
+                        metrics.batchDispatched(full.size(), full.samples());
+                        // Waiting for room in the window is not parsing time
+                        long dispatchStart = System.nanoTime();
+                        dispatcher.dispatch(full);
+                        dispatchNanos += System.nanoTime() - dispatchStart;
                     }
                 }
-                context.getLogger().log(String.format("Parsed record for metrics %s", String.join(", ", tally)));
-                if (success) {
-                    context.getLogger().log(String.format("Successfully processed record %s", record.getRecordId()));
-                    responseRecords.add(FirehoseEventProcessingResult.createSuccessResult(record.getRecordId(), recordData));
-                } else {
-                    context.getLogger().log(String.format("Failed to send record %s", record.getRecordId()));
-                    responseRecords.add(FirehoseEventProcessingResult.createFailureResult(record.getRecordId(), "Batch failed to write."));
-                }
-            } catch (JsonProcessingException e) {
-                context.getLogger().log("Error processing record: " + e.getMessage());
-                responseRecords.add(FirehoseEventProcessingResult.createFailureResult(record.getRecordId(), e.getMessage()));
+                metrics.recordParsed(parsed, System.nanoTime() - parseStart - dispatchNanos);
+                logger.debug("Parsed {} metrics from record {}", parsed, record.getRecordId());
+                parsedRecords.add(new ParsedRecord(record.getRecordId(), recordData, null));
             } catch (IOException e) {
-                context.getLogger().log("Error sending data to amp: " + e.getMessage());
-                responseRecords.add(FirehoseEventProcessingResult.createFailureResult(record.getRecordId(), e.getMessage()));
-            } catch (NoSuchAlgorithmException e) {
-                context.getLogger().log("Error encoding data for sending: " + e.getMessage());
-                responseRecords.add(FirehoseEventProcessingResult.createFailureResult(record.getRecordId(), e.getMessage()));
+                // A record without an error is acknowledged, so an exception without a message is reported by its type
+                String reason = e.getMessage() != null ? e.getMessage() : e.toString();
+                context.getLogger().log("Error processing record: " + reason);
+                parsedRecords.add(new ParsedRecord(record.getRecordId(), recordData, reason));
+            } catch (InterruptedException e) {
+                context.getLogger().log("Interrupted while waiting to send a batch");
+                Thread.currentThread().interrupt();
+                interrupted = true;
+                parsedRecords.add(new ParsedRecord(record.getRecordId(), recordData, "Interrupted before the record was sent."));
             }
         }
 
-        if (!batchMetrics.isEmpty()) {
+        MetricBatch last = batcher.flush();
+        metrics.samplesCollapsed(batcher.collapsed());
+        if (limiter.dropped() > 0) {
+            logger.warn("Dropped {} metrics of series past the limit of {} per family: {}",
+                    limiter.dropped(), maxSeriesPerFamily, limiter.droppedByFamily());
+            metrics.samplesLimited(limiter.dropped());
+        }
+        if (last != null && !interrupted) {
+            logger.debug("Processed {} records, sending {} series with {} samples", parsedRecords.size(), last.size(), last.samples());
+            metrics.batchDispatched(last.size(), last.samples());
             try {
-                context.getLogger().log(String.format("Processed %d records, sending %d metric stream items", responseRecords.size(), batchMetrics.size()));
-                if (sendMetricBatch(batchMetrics, context)) {
-                    context.getLogger().log("Successfully sent final batch.");
-                } else {
-                    context.getLogger().log("Failed to send final batch.");
-                }
-            } catch (Exception e) {
-                // TODO: Need better handling here if we can't reach prometheus
-                context.getLogger().log("Error processing final batch: " + e.getMessage());
+                dispatcher.dispatch(last);
+            } catch (InterruptedException e) {
+                context.getLogger().log("Interrupted while waiting to send the final batch");
+                Thread.currentThread().interrupt();
+                parsedRecords.replaceAll(parsed -> last.recordIds().contains(parsed.recordId()) && parsed.error() == null
+                        ? new ParsedRecord(parsed.recordId(), parsed.data(), "Interrupted before the record was sent.")
+                        : parsed);
+            }
+        }
+
+        // A record is only acknowledged once every batch carrying any of its metrics has been written
+        Map<String, String> failedRecords = dispatcher.awaitCompletion();
+        awaitReplay(replay, deadlineMillis);
+        List<FirehoseEventProcessingResult.Record> responseRecords = new ArrayList<>(parsedRecords.size());
+        for (ParsedRecord parsed : parsedRecords) {
+            String failure = failedRecords.get(parsed.recordId());
+            if (parsed.error() != null) {
+                responseRecords.add(FirehoseEventProcessingResult.createFailureResult(parsed.recordId(), parsed.error()));
+            } else if (failure != null) {
+                context.getLogger().log(String.format("Failed to send record %s: %s", parsed.recordId(), failure));
+                responseRecords.add(FirehoseEventProcessingResult.createFailureResult(parsed.recordId(), failure));
+            } else {
+                logger.debug("Successfully processed record {}", parsed.recordId());
+                responseRecords.add(FirehoseEventProcessingResult.createSuccessResult(parsed.recordId(), parsed.data()));
             }
         }
 
         FirehoseEventProcessingResult response = new FirehoseEventProcessingResult(responseRecords);
-        try {
-            context.getLogger().log(objectMapper.writeValueAsString(response));
-        } catch (JsonProcessingException e) {
-            context.getLogger().log("Can't print response object");
+        if (logPayloads) {
+            try {
+                context.getLogger().log(ResponseWriter.objectMapper.writeValueAsString(response));
+            } catch (JsonProcessingException e) {
+                context.getLogger().log("Can't print response object");
+            }
         }
+        metricsSink.emit(metrics);
         return response;
     }
 
-    private String getEnvVar(String name) {
-        return this.getEnvVar(name, null);
-    }
-
-    private String getEnvVar(String name, String defaultValue) {
-        String value = System.getenv(name);
-        if (value == null || value.trim().isEmpty()) {
-            if (defaultValue == null) {
-                throw new IllegalStateException("Required environment variable missing: " + name);
-            } else {
-                return defaultValue;
+    /**
+     * Sends a batch, retrying transient failures until the deadline, and splitting it when it's rejected as too large.
+     *
+     * @return The series which could not be delivered, as the records they were built from
+     */
+    private List<DeliveryFailure> sendMetricBatch(MetricBatch batch, long deadlineMillis, InvocationMetrics metrics)
+            throws IOException {
+
+        // Construct the compressed Protobuf payload, once for every attempt
+        Retrier.Result result;
+        int payloadSize;
+        long encodeStart = System.nanoTime();
+        try (EncodedPayload payload = encoder.encode(batch.series())) {
+            payloadSize = payload.uncompressedSize();
+            metrics.requestEncoded(payloadSize, payload.size(), System.nanoTime() - encodeStart);
+            logger.debug("Sending {} bytes payload ({} estimated, {} compressed, metadata of {} families) to prometheus at {}",
+                    payloadSize, batch.estimatedBytes(), payload.size(), payload.metadataFamilies(), restApiEndpoint);
+
+            ByteBuffer body = payload.body();
+            result = retrier.deliver(() -> post(body, metrics), deadlineMillis);
+            metrics.retried(result.attempts() - 1);
+            if (result.outcome() == Retrier.Outcome.DELIVERED) {
+                encoder.delivered(payload);
+            } else if (result.outcome() == Retrier.Outcome.EXHAUSTED && spillStore != null && spillStore.append(body)) {
+                // The records are acknowledged, the request is delivered by a later invocation instead
+                logger.warn("Batch of {} series spilled after {} attempts: {}", batch.size(), result.attempts(), result.reason());
+                metrics.batchSpilled();
+                return List.of();
             }
         }
-        return value;
-    }
 
-    private boolean sendMetricBatch(List<CloudWatchStreamMetric> metrics, Context context)
-            throws IOException, NoSuchAlgorithmException {
-
-        // Construct Protobuf payload
-        byte[] prometheusData = serializeToProto(metrics);
-        byte[] compressedData = Snappy.compress(prometheusData);
-
-        String amzDate = dateFormat.format(new Date());
-        String dateStamp = amzDate.substring(0, 8);
-
-        // Create the canonical request
-        String canonicalUri = restApiPath;
-        String canonicalQuerystring = "";
-
-        String payloadHash = sha256Hex(compressedData);
-        // CanonicalHeaders:
-        // - "For the purpose of calculating an authorization signature, only the host and any x-amz-* headers
-        //      are required; however, in order to prevent data tampering, you should consider including all
-        //      the headers in the signature calculation."
-        // - "must appear in alphabetical order" / "sorted by header name"
-        // - "lowercase with values trimmed"
-        // - "If the Content-Type header is present in the request, you must add it to the CanonicalHeaders list. "
-        // - The last header is also \n terminated
-        String canonicalHeaders =
-                "content-type:" + CONTENT_TYPE + "\n" +
-                        "host:" + restApiHost + "\n" +
-                        "x-amz-content-sha256:" + payloadHash + "\n" +
-                        "x-amz-date:" + amzDate + "\n" +
-                        "x-api-key:" + API_KEY + "\n";  // terminate last with \n
-        String signedHeaders = "content-type;host;x-amz-content-sha256;x-amz-date;x-api-key";
-
-        String canonicalRequest =
-                METHOD + "\n" +
-                        canonicalUri + "\n" +
-                        canonicalQuerystring + "\n" +
-                        canonicalHeaders + "\n" +
-                        signedHeaders + "\n" +
-                        payloadHash;
-
-        logger.debug("Canonical Request: '{}'", canonicalRequest.replace("\n", "\\n"));
-
-        String credentialScope = String.format("%s/%s/%s/aws4_request", dateStamp, awsRegion, SERVICE);
-        String hashedCanonicalRequest = sha256Hex(canonicalRequest);
-        String stringToSign =
-                ALGORITHM + "\n" +
-                        amzDate + "\n" +
-                        credentialScope + "\n" +
-                        hashedCanonicalRequest;
-
-        logger.debug("String to Sign: '{}'", stringToSign);
-
-        byte[] signingKey = getSignatureKey(credentials.secretAccessKey(), dateStamp, awsRegion, SERVICE);
-        String signature = hmacSha256Hex(signingKey, stringToSign);
-
-        // Add signing information to the request
-        String authorizationHeader = String.format("%s Credential=%s/%s, SignedHeaders=%s, Signature=%s",
-                ALGORITHM, credentials.accessKeyId(), credentialScope, signedHeaders, signature);
-
-        logger.debug("Sending {} bytes payload to prometheus at {}", compressedData.length, restApiEndpoint);
-
-        HttpPost post = new HttpPost(URI.create(restApiEndpoint));
-        post.setHeader("host", restApiHost);
-        post.setHeader("Content-Encoding", CONTENT_ENCODING);
-        post.setHeader("Content-Type", CONTENT_TYPE);
-        post.setHeader("x-amz-date", amzDate);
-        post.setHeader("x-amz-security-token", credentials.sessionToken());
-        post.setHeader("x-amz-content-sha256", payloadHash);
-        post.setHeader("x-prometheus-remote-write-version", "0.1.0");
-        post.setHeader("Authorization", authorizationHeader);
-
-        // Attach compressed data as the request body
-        post.setEntity(new ByteArrayEntity(compressedData));
-
-        try (CloseableHttpClient client = HttpClients.createDefault();
-             CloseableHttpResponse response = client.execute(post)) {
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode != 200) {
-                logger.debug("Returned status code {}: {}", statusCode,
-                        new String(response.getEntity().getContent().readAllBytes(), Charset.defaultCharset())
-                );
-                return false;
-            }
-            return true;
-        } catch (IOException e) {
-            return false;
+        switch (result.outcome()) {
+            case DELIVERED:
+                return List.of();
+            case TOO_LARGE:
+                // The limits are only estimates, so halve the batch and try again rather than dropping it
+                List<MetricBatch> halves = batch.split();
+                if (halves == null) {
+                    logger.warn("Single series batch of {} samples rejected as too large", batch.samples());
+                    return List.of(new DeliveryFailure(batch.recordIds(), result.reason()));
+                }
+                logger.debug("Batch of {} bytes rejected as too large, splitting it", payloadSize);
+                List<DeliveryFailure> failures = new ArrayList<>(sendMetricBatch(halves.get(0), deadlineMillis, metrics));
+                failures.addAll(sendMetricBatch(halves.get(1), deadlineMillis, metrics));
+                return failures;
+            default:
+                logger.warn("Batch of {} series failed after {} attempts: {}", batch.size(), result.attempts(), result.reason());
+                return List.of(new DeliveryFailure(batch.recordIds(), result.reason()));
         }
     }
 
-    private byte[] serializeToProto(List<CloudWatchStreamMetric> metrics) {
-        Remote.WriteRequest.Builder writeRequest = Remote.WriteRequest.newBuilder();
-        // To make sure all the properties are aggregated correctly, first we will group by the metric name. This will
-        metrics.stream()
-                .collect(Collectors.groupingBy(CloudWatchStreamMetric::accountId))
-                .forEach((accountId, accountGroupedMetrics) -> {
-            logger.debug("Aggregating {} metrics for '{}'", accountGroupedMetrics.size(), accountId);
-            accountGroupedMetrics.stream()
-                    .collect(Collectors.groupingBy(CloudWatchStreamMetric::metricName))
-                    .forEach((metricName, nameGroupedMetrics) -> {
-                logger.debug("Aggregating {} metrics for '{}'", nameGroupedMetrics.size(), metricName);
-                nameGroupedMetrics.stream()
-                        .collect(Collectors.groupingBy(CloudWatchStreamMetric::dimensions))
-                        .forEach((dimensions, dimensionGroupedMetrics) -> {
-                    Pair<Types.TimeSeries, Types.MetricMetadata> pair = this.createWriteRequestPair(accountId, metricName, dimensions, dimensionGroupedMetrics);
-                    logger.debug("Write record for {}, adding {} samples of type {}", metricName, pair.first().getSamplesCount(), pair.second().getUnit());
-                    writeRequest.addTimeseries(pair.first());
-                    writeRequest.addMetadata(pair.second());
-                });
-            });
-        });
-
-
-        // Serialize to Protobuf
-        return writeRequest.build().toByteArray();
+    /**
+     * Signs and posts a compressed request, once.
+     */
+    private RemoteWriteResponse post(ByteBuffer body, InvocationMetrics metrics) throws IOException {
+        // Signed again for every attempt, as a retry may use different credentials and must carry a fresh date
+        long signStart = System.nanoTime();
+        Map<String, String> headers = new LinkedHashMap<>(signer.sign(credentialsProvider.resolveCredentials(), Instant.now(), body));
+        metrics.requestSigned(System.nanoTime() - signStart);
+        headers.put("Content-Encoding", CONTENT_ENCODING);
+        headers.put("Content-Type", CONTENT_TYPE);
+        headers.put("x-prometheus-remote-write-version", "0.1.0");
+
+        // Stream the compressed data as the request body
+        long postStart = System.nanoTime();
+        RemoteWriteResponse response;
+        try {
+            response = transport.post(restApiEndpoint, headers, body);
+        } catch (IOException e) {
+            metrics.requestFailed(System.nanoTime() - postStart);
+            throw e;
+        }
+        metrics.responseReceived(response.statusCode(), System.nanoTime() - postStart);
+        if (response.statusCode() == 403) {
+            // The credentials may have expired early or been revoked, resolve them again for the next attempt
+            credentialsProvider.invalidate();
+        }
+        return response;
     }
 
     /**
-     * This function creates a protobuf `TimeSeries` for a particular metric (given by `metricName`) and populates the
-     * samples with the aggregated data from the list of metric stream items (given by `metrisValues`). It also adds
-     * an account label and labels for each of the given dimensions.
+     * Replays the spilled requests in the background, oldest first, and stops at the first one which still can't be
+     * delivered. Requests rejected for good are dropped, as they would be rejected on every replay. The replay also
+     * stops once a request couldn't be delivered before the time margin of the invocation, leaving the rest to the
+     * next one.
      *
-     * It also creates a protobuf `MetricMetadata` for the metric and populates it from values in the given metric
-     * stream list. These two are returns as pairs.
+     * The replay records into metrics of its own, emitted once it completes. A replay shared between requests in server
+     * mode may outlive the request which started it, whose metrics are emitted by then.
      *
-     * @param accountId The AWS account from which the data originates
-     * @param metricName The name of the metric
-     * @param dimensions Metric dimensions to be added as labels
-     * @param metricsValues The list of the metrics from which values and timestamps will be extracted
-     * @return A pair of timeseries and metadata for a particular metric
+     * @return The completion of the replay, which never completes exceptionally
      */
-    private Pair<Types.TimeSeries, Types.MetricMetadata> createWriteRequestPair(
-            String accountId,
-            String metricName,
-            Map<String, String> dimensions,
-            List<CloudWatchStreamMetric> metricsValues
-        ) {
-        Types.TimeSeries.Builder timeSeries = Types.TimeSeries.newBuilder();
-        Types.MetricMetadata.Builder metaData = Types.MetricMetadata.newBuilder();
-        if (dimensions != null) {
-            for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
-                timeSeries.addLabels(Types.Label.newBuilder()
-                        .setName(sanitizeLabel(dimension.getKey()))
-                        .setValue(dimension.getValue())
-                        .build());
-                logger.debug("Adding dimension {} with value {} for metric '{}'", dimension.getKey(), dimension.getValue(), metricName);
-            }
+    private CompletableFuture<Void> replaySpilled(long deadlineMillis) {
+        if (spillStore == null || !spillStore.hasPending()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> current = spillReplay.get();
+        if (!current.isDone()) {
+            return current;
         }
-        timeSeries.addLabels(Types.Label.newBuilder()
-                .setName(metricNameLabel)
-                .setValue(this.sanitizeName(metricName))
-        );
-        timeSeries.addLabels(Types.Label.newBuilder()
-                .setName(metricAccountLabel)
-                .setValue(accountId)
-        );
-        for (CloudWatchStreamMetric metric : metricsValues) {
-            Types.Sample.Builder sample = Types.Sample.newBuilder();
-            sample.setTimestamp(metric.timestamp());
-            if (metric.unit() != null) {
-                metaData.setUnit(metric.unit());
-                if (metric.unit().equals("Count")) {
-                    metaData.setType(Types.MetricMetadata.MetricType.COUNTER);
-                    sample.setValue(metric.value().count());
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        if (!spillReplay.compareAndSet(current, started)) {
+            return spillReplay.get();
+        }
+        CompletableFuture.runAsync(() -> {
+            InvocationMetrics metrics = new InvocationMetrics();
+            try {
+                for (SpillStore.Entry entry : spillStore.pending()) {
+                    if (!retrier.canAttempt(deadlineMillis)) {
+                        logger.debug("Replay of spilled requests stopped, the invocation is about to time out");
+                        return;
+                    }
+                    ByteBuffer body = entry.body();
+                    Retrier.Result result = retrier.deliver(() -> post(body, metrics), deadlineMillis);
+                    metrics.retried(result.attempts() - 1);
+                    if (result.outcome() == Retrier.Outcome.EXHAUSTED) {
+                        logger.warn("Replay of spilled requests stopped after {} attempts: {}", result.attempts(), result.reason());
+                        return;
+                    }
+                    if (result.outcome() == Retrier.Outcome.DELIVERED) {
+                        metrics.batchReplayed();
+                    } else {
+                        logger.warn("Dropping spilled request of {} bytes: {}", body.remaining(), result.reason());
+                    }
+                    spillStore.remove(entry);
                 }
-                // TODO: What about other types?
+            } catch (RuntimeException e) {
+                logger.warn("Error replaying spilled requests: {}", e.getMessage());
+            } finally {
+                metricsSink.emit(metrics);
+                started.complete(null);
             }
-            logger.debug("Adding sample {} at timestamp {} for metric '{}'", sample.getValue(), sample.getTimestamp(), metricName);
-            timeSeries.addSamples(sample.build());
-            metaData.setMetricFamilyName(sanitizeLabel(metric.namespace()));
-        }
-        return new Pair<>(timeSeries.build(), metaData.build());
+        }, sendExecutor);
+        return started;
     }
 
     /**
-     * This method takes an input string and replaces any noncon
-     * @param input
-     * @param regex
-     * @return
+     * Waits for the replay of the spilled requests, but not past the time margin of the invocation. A replay shared
+     * with a request which started earlier may still be running by then, and the batches of this invocation are sent
+     * regardless rather than left without time to be delivered.
      */
-    private String sanitize(String input, String regex) {
-        if (input.matches(regex)) {
-            return input;
-        } else {
-            String sanitized = input.replaceAll("[^a-zA-Z0-9_]", "_");
-            if (!sanitized.isEmpty() && Character.isDigit(sanitized.charAt(0))) {
-                sanitized = "_" + sanitized.substring(1);
-            }
-            return sanitized;
+    private void awaitReplay(CompletableFuture<Void> replay, long deadlineMillis) {
+        try {
+            replay.get(Math.max(0, retrier.remainingMillis(deadlineMillis)), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.debug("Not waiting any longer for the replay of spilled requests");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // A replay never completes exceptionally
+            throw new IllegalStateException(e);
         }
     }
 
-    private String sanitizeName(String input) {
-        return this.sanitize(input, "[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private SpillStore openSpillStore(SpillConfig config) {
+        if (!config.enabled()) {
+            return null;
+        }
+        try {
+            return SpillStore.open(config, Clock.systemUTC());
+        } catch (IOException e) {
+            logger.warn("Error opening the spill store in {}, undelivered batches fail their records: {}",
+                    config.directory(), e.getMessage());
+            return null;
+        }
     }
 
-    private String sanitizeLabel(String input) {
-        return this.sanitize(input, "[a-zA-Z_][a-zA-Z0-9_]*");
+    /**
+     * Holds the mapper the sampled responses are logged with, so Jackson databind is only loaded once one is.
+     */
+    private static final class ResponseWriter {
+        private static final ObjectMapper objectMapper = new ObjectMapper();
     }
 
-    record Pair<F, S>(F first, S second) {
+    /**
+     * The outcome of parsing a single Firehose record, `error` is set when the record couldn't be parsed.
+     */
+    record ParsedRecord(String recordId, ByteBuffer data, String error) {
     }
 }
@@ -0,0 +1,49 @@
+package com.adobe.aep.metrics;
+
+/**
+ * Small helpers for reading the handler configuration out of the process environment. Every setting of the
+ * handler is provided through Lambda environment variables, so all of them are read through here to get the same
+ * treatment of missing and blank values. System properties of the same name are used when a variable is not set.
+ */
+public final class Environment {
+
+    private Environment() {
+    }
+
+    public static String get(String name) {
+        return get(name, null);
+    }
+
+    public static String get(String name, String defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.trim().isEmpty()) {
+            // Outside of Lambda, e.g. in server mode through `mvn exec:java`, settings may be given as system
+            // properties
+            value = System.getProperty(name);
+        }
+        if (value == null || value.trim().isEmpty()) {
+            if (defaultValue == null) {
+                throw new IllegalStateException("Required environment variable missing: " + name);
+            } else {
+                return defaultValue;
+            }
+        }
+        return value;
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        return Integer.parseInt(get(name, String.valueOf(defaultValue)).trim());
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        return Long.parseLong(get(name, String.valueOf(defaultValue)).trim());
+    }
+
+    public static double getDouble(String name, double defaultValue) {
+        return Double.parseDouble(get(name, String.valueOf(defaultValue)).trim());
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(get(name, String.valueOf(defaultValue)).trim());
+    }
+}
@@ -1,5 +1,7 @@
 package com.adobe.aep.metrics;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.List;
 
@@ -23,6 +25,13 @@ public class FirehoseEventProcessingResult {
             this.data = Base64.getEncoder().encodeToString(data.getBytes());
         }
 
+        Record(String recordId, Result result, ByteBuffer data) {
+            this.recordId = recordId;
+            this.result = result;
+            // Encode the raw record bytes, rather than decoding them into a string only to encode them back
+            this.data = StandardCharsets.ISO_8859_1.decode(Base64.getEncoder().encode(data.duplicate())).toString();
+        }
+
         public String getRecordId() {
             return recordId;
         }
@@ -45,6 +54,10 @@ public class FirehoseEventProcessingResult {
         return new FirehoseEventProcessingResult.Record(recordId, Result.Ok, data);
     }
 
+    public static FirehoseEventProcessingResult.Record createSuccessResult(String recordId, ByteBuffer data) {
+        return new FirehoseEventProcessingResult.Record(recordId, Result.Ok, data);
+    }
+
     public static FirehoseEventProcessingResult.Record createDroppedResult(String recordId, String data) {
         return new FirehoseEventProcessingResult.Record(recordId, Result.Dropped, data);
     }
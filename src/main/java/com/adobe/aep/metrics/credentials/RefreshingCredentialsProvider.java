@@ -0,0 +1,138 @@
+package com.adobe.aep.metrics.credentials;
+
+import com.adobe.aep.metrics.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Caches the credentials of a delegate provider and refreshes them in the background before they expire, so that
+ * resolving credentials on the send path never waits on the delegate unless the cached credentials are already
+ * unusable.
+ *
+ * The credentials are refreshed `refreshAhead` before their expiration. Credentials which don't carry an expiration,
+ * e.g. plain access keys, are refreshed once they are `maxAge` old, so a rotated key is eventually picked up.
+ * Listeners registered with {@link #onRotation(Consumer)} are told whenever a refresh returns a different key, which
+ * is used to drop anything derived from the previous one, like the cached signing key.
+ */
+public class RefreshingCredentialsProvider implements AwsCredentialsProvider {
+
+    public static final Duration DEFAULT_REFRESH_AHEAD = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(15);
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshingCredentialsProvider.class);
+
+    private final AwsCredentialsProvider delegate;
+    private final Clock clock;
+    private final Duration refreshAhead;
+    private final Duration maxAge;
+    private final Executor refreshExecutor;
+    private final List<Consumer<AwsCredentials>> rotationListeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    // Not a monitor, as waiting on the delegate within one would pin a virtual thread to its carrier
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private volatile CachedCredentials cached;
+    private AwsCredentials lastResolved;
+
+    public RefreshingCredentialsProvider(AwsCredentialsProvider delegate, Clock clock, Duration refreshAhead,
+                                         Duration maxAge, Executor refreshExecutor) {
+        this.delegate = delegate;
+        this.clock = clock;
+        this.refreshAhead = refreshAhead;
+        this.maxAge = maxAge;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    public static RefreshingCredentialsProvider fromEnvironment(AwsCredentialsProvider delegate) {
+        return new RefreshingCredentialsProvider(delegate, Clock.systemUTC(),
+                Duration.ofSeconds(Environment.getLong("CREDENTIALS_REFRESH_AHEAD_SECONDS", DEFAULT_REFRESH_AHEAD.toSeconds())),
+                Duration.ofSeconds(Environment.getLong("CREDENTIALS_MAX_AGE_SECONDS", DEFAULT_MAX_AGE.toSeconds())),
+                runnable -> Thread.ofVirtual().name("credentials-refresh").start(runnable));
+    }
+
+    @Override
+    public AwsCredentials resolveCredentials() {
+        CachedCredentials current = cached;
+        Instant now = clock.instant();
+        if (current == null || !now.isBefore(current.expiresAt())) {
+            // Nothing usable is cached, so this has to wait for the delegate
+            refreshLock.lock();
+            try {
+                current = cached;
+                if (current == null || !clock.instant().isBefore(current.expiresAt())) {
+                    current = refresh();
+                }
+            } finally {
+                refreshLock.unlock();
+            }
+        } else if (!now.isBefore(current.refreshAt()) && refreshing.compareAndSet(false, true)) {
+            refreshExecutor.execute(() -> {
+                refreshLock.lock();
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    // Keep using the cached credentials, the next call past the refresh time tries again
+                    logger.warn("Failed to refresh credentials: {}", e.getMessage());
+                } finally {
+                    refreshLock.unlock();
+                    refreshing.set(false);
+                }
+            });
+        }
+        return current.credentials();
+    }
+
+    /**
+     * Discards the cached credentials, so the next call resolves them from the delegate. Used when the endpoint
+     * rejected a request signed with the cached credentials.
+     */
+    public void invalidate() {
+        cached = null;
+    }
+
+    /**
+     * Registers a listener called with the new credentials whenever a refresh returns a different key.
+     */
+    public void onRotation(Consumer<AwsCredentials> listener) {
+        rotationListeners.add(listener);
+    }
+
+    private CachedCredentials refresh() {
+        AwsCredentials credentials = delegate.resolveCredentials();
+        Instant now = clock.instant();
+        Instant expiresAt = credentials.expirationTime().orElse(Instant.MAX);
+        Instant refreshAt = expiresAt.equals(Instant.MAX) ? now.plus(maxAge) : expiresAt.minus(refreshAhead);
+        if (refreshAt.isBefore(now)) {
+            // Credentials issued for less than the refresh window are refreshed half way through their lifetime
+            refreshAt = now.plus(Duration.between(now, expiresAt).dividedBy(2));
+        }
+
+        CachedCredentials refreshed = new CachedCredentials(credentials, refreshAt, expiresAt);
+        cached = refreshed;
+        logger.debug("Resolved credentials for {}, refreshing at {}", credentials.accessKeyId(), refreshAt);
+
+        AwsCredentials previous = lastResolved;
+        lastResolved = credentials;
+        if (previous != null && (!previous.accessKeyId().equals(credentials.accessKeyId())
+                || !previous.secretAccessKey().equals(credentials.secretAccessKey()))) {
+            logger.info("Credentials rotated from {} to {}", previous.accessKeyId(), credentials.accessKeyId());
+            rotationListeners.forEach(listener -> listener.accept(credentials));
+        }
+        return refreshed;
+    }
+
+    private record CachedCredentials(AwsCredentials credentials, Instant refreshAt, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,137 @@
+package com.adobe.aep.metrics.dispatch;
+
+import com.adobe.aep.metrics.series.LongSet;
+import com.adobe.aep.metrics.series.Series;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Sends batches in the background so the caller can keep parsing while earlier batches are on the wire. At most
+ * `maxInFlight` batches are outstanding at any time; once the window is full, {@link #dispatch(MetricBatch)} blocks
+ * until one of them completes, which keeps memory bounded however large the Firehose event is.
+ *
+ * Batches are only cut by size, so the samples of a series may be spread over several of them. A batch which shares a
+ * series with a batch still in flight is only sent once that one has completed, retries included, since remote_write
+ * endpoints reject samples older than the last one written to their series. Batches without a series in common are
+ * sent concurrently. A batch waiting on another takes its place in the window all the same, so the number of batches
+ * held in memory stays bounded.
+ *
+ * A dispatcher tracks the batches of a single invocation, and is used by the thread parsing its records. Failures are
+ * collected as the Firehose record ids the undelivered series were built from, together with the reason, and handed
+ * back by {@link #awaitCompletion()}.
+ */
+public class BatchDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchDispatcher.class);
+
+    private final Executor executor;
+    private final BatchSender sender;
+    private final Semaphore window;
+    private final List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+    // The batches which may not have completed yet, with the fingerprints of their series
+    private final List<Sending> unfinished = new ArrayList<>();
+    private final Map<String, String> failedRecords = new ConcurrentHashMap<>();
+
+    public BatchDispatcher(Executor executor, int maxInFlight, BatchSender sender) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one batch must be allowed in flight, got " + maxInFlight);
+        }
+        this.executor = executor;
+        this.sender = sender;
+        this.window = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Hands the batch to a background thread for sending, blocking while the in-flight window is full.
+     *
+     * @param batch The batch to send
+     * @throws InterruptedException If interrupted while waiting for room in the window
+     */
+    public void dispatch(MetricBatch batch) throws InterruptedException {
+        window.acquire();
+        unfinished.removeIf(sending -> sending.future().isDone());
+        CompletableFuture<?>[] predecessors = unfinished.stream()
+                .filter(sending -> sending.sharesSeriesWith(batch))
+                .map(Sending::future)
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture<Void> future;
+        try {
+            future = predecessors.length == 0
+                    ? CompletableFuture.runAsync(() -> send(batch), executor)
+                    // The batch is sent whatever the outcome of the ones before it
+                    : CompletableFuture.allOf(predecessors).handleAsync((ignored, error) -> {
+                        send(batch);
+                        return null;
+                    }, executor);
+        } catch (RejectedExecutionException e) {
+            window.release();
+            throw e;
+        }
+        inFlight.add(future);
+        unfinished.add(new Sending(future, fingerprints(batch)));
+    }
+
+    /**
+     * Waits for every dispatched batch to complete.
+     *
+     * @return The ids of the records which contributed to at least one undelivered series, and why it failed
+     */
+    public Map<String, String> awaitCompletion() {
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)).join();
+        inFlight.clear();
+        unfinished.clear();
+        return failedRecords;
+    }
+
+    private static LongSet fingerprints(MetricBatch batch) {
+        LongSet fingerprints = new LongSet(batch.size());
+        for (Series series : batch.series()) {
+            fingerprints.add(series.fingerprint());
+        }
+        return fingerprints;
+    }
+
+    private void send(MetricBatch batch) {
+        try {
+            for (DeliveryFailure failure : sender.send(batch)) {
+                failure.recordIds().forEach(recordId -> failedRecords.putIfAbsent(recordId, failure.reason()));
+            }
+        } catch (Exception e) {
+            String reason = reason(e);
+            logger.warn("Error sending batch of {} series: {}", batch.size(), reason);
+            batch.recordIds().forEach(recordId -> failedRecords.putIfAbsent(recordId, reason));
+        } finally {
+            window.release();
+        }
+    }
+
+    /**
+     * @return The message of the exception, or its type when it has none, as a failed record must carry a reason
+     */
+    static String reason(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    /**
+     * A batch handed to the executor, which a later batch of one of the same series has to wait for.
+     */
+    private record Sending(CompletableFuture<Void> future, LongSet series) {
+        boolean sharesSeriesWith(MetricBatch batch) {
+            for (Series each : batch.series()) {
+                if (series.contains(each.fingerprint())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
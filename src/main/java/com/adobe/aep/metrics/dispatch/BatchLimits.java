@@ -0,0 +1,33 @@
+package com.adobe.aep.metrics.dispatch;
+
+import com.adobe.aep.metrics.Environment;
+
+/**
+ * The limits a single remote_write request is kept under. A batch is sent as soon as adding another metric stream
+ * item would push it past any of them.
+ *
+ * @param maxBytes The maximum estimated size of the uncompressed protobuf payload
+ * @param maxSamples The maximum number of samples, across all series
+ * @param maxSeries The maximum number of series
+ */
+public record BatchLimits(
+        long maxBytes,
+        int maxSamples,
+        int maxSeries
+) {
+    public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MAX_SAMPLES = 10_000;
+    public static final int DEFAULT_MAX_SERIES = 5_000;
+
+    public static BatchLimits defaults() {
+        return new BatchLimits(DEFAULT_MAX_BYTES, DEFAULT_MAX_SAMPLES, DEFAULT_MAX_SERIES);
+    }
+
+    public static BatchLimits fromEnvironment() {
+        return new BatchLimits(
+                Environment.getLong("BATCH_MAX_BYTES", DEFAULT_MAX_BYTES),
+                Environment.getInt("BATCH_MAX_SAMPLES", DEFAULT_MAX_SAMPLES),
+                Environment.getInt("BATCH_MAX_SERIES", DEFAULT_MAX_SERIES)
+        );
+    }
+}
@@ -0,0 +1,17 @@
+package com.adobe.aep.metrics.dispatch;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+@FunctionalInterface
+public interface BatchSender {
+
+    /**
+     * Encodes, signs and sends a single batch.
+     *
+     * @param batch The batch to send
+     * @return The parts of the batch which could not be delivered, empty if all of it was
+     */
+    List<DeliveryFailure> send(MetricBatch batch) throws IOException, GeneralSecurityException;
+}
@@ -0,0 +1,15 @@
+package com.adobe.aep.metrics.dispatch;
+
+import java.util.Set;
+
+/**
+ * Series of a batch which could not be delivered.
+ *
+ * @param recordIds The ids of the records which contributed samples to the undelivered series
+ * @param reason Why the series could not be delivered
+ */
+public record DeliveryFailure(
+        Set<String> recordIds,
+        String reason
+) {
+}
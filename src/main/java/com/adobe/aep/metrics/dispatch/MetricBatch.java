@@ -0,0 +1,65 @@
+package com.adobe.aep.metrics.dispatch;
+
+import com.adobe.aep.metrics.series.Series;
+
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A batch of series to be written in a single remote_write request, together with the ids of the Firehose records
+ * the samples were parsed from. A record can contribute to several batches, and is only reported as processed once
+ * every one of them has been delivered.
+ *
+ * @param series The series in the batch
+ * @param records The ids of the Firehose records of the batch, each series refers to them by their position
+ * @param samples The number of samples across all series
+ * @param estimatedBytes The estimated size of the encoded request
+ */
+public record MetricBatch(
+        List<Series> series,
+        List<String> records,
+        int samples,
+        long estimatedBytes
+) {
+    public int size() {
+        return series.size();
+    }
+
+    /**
+     * @return The ids of the records which contributed samples to the series of this batch
+     */
+    public Set<String> recordIds() {
+        BitSet positions = new BitSet();
+        for (Series s : series) {
+            positions.or(s.records());
+        }
+        Set<String> recordIds = new LinkedHashSet<>();
+        positions.stream().forEach(position -> recordIds.add(records.get(position)));
+        return recordIds;
+    }
+
+    /**
+     * Splits the batch into two halves by series, for when the endpoint rejected it as too large.
+     *
+     * @return The two halves, or null if the batch holds a single series and can't be split
+     */
+    public List<MetricBatch> split() {
+        if (series.size() < 2) {
+            return null;
+        }
+        int middle = series.size() / 2;
+        List<Series> first = series.subList(0, middle);
+        List<Series> second = series.subList(middle, series.size());
+        // Samples and bytes are divided in proportion to the items each half holds
+        long firstItems = first.stream().mapToInt(Series::size).sum();
+        long items = firstItems + second.stream().mapToInt(Series::size).sum();
+        int firstSamples = (int) (samples * firstItems / items);
+        long firstBytes = estimatedBytes * firstItems / items;
+        return List.of(
+                new MetricBatch(first, records, firstSamples, firstBytes),
+                new MetricBatch(second, records, samples - firstSamples, estimatedBytes - firstBytes)
+        );
+    }
+}
@@ -0,0 +1,197 @@
+package com.adobe.aep.metrics.dispatch;
+
+import com.adobe.aep.metrics.encode.WriteRequestEncoder;
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.adobe.aep.metrics.records.Value;
+import com.adobe.aep.metrics.relabel.Relabeler;
+import com.adobe.aep.metrics.relabel.SeriesLimiter;
+import com.adobe.aep.metrics.series.AggregationWindow;
+import com.adobe.aep.metrics.series.CloudWatchUnit;
+import com.adobe.aep.metrics.series.Series;
+import com.adobe.aep.metrics.series.SeenSamples;
+import com.adobe.aep.metrics.series.SeriesIndex;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects metric stream items into series, and cuts them into batches which fill a remote_write request as much as
+ * the {@link BatchLimits} allow.
+ *
+ * The encoded size and the number of samples and series of the current batch are tracked as items are added, using
+ * the estimates of the {@link WriteRequestEncoder}. The metadata of a metric family is counted for the first series of
+ * the family only, as it is sent once per request. An item which would push the batch past any limit closes it, and
+ * starts the next one. A single item always fits in an empty batch, however large it is.
+ *
+ * With an {@link AggregationWindow}, exact duplicates of an item are dropped, and an item is merged into the sample of
+ * its series for the same window when the batch already has one, so it adds neither a sample nor bytes. Merging never
+ * reaches across batches, a batch may be on its way already when a late item arrives. The samples of every series are
+ * sorted by timestamp when the batch is closed.
+ *
+ * Items are relabeled and passed through the {@link SeriesLimiter} before they are added, and after duplicates are
+ * recognized, which is done on the item as it was parsed. When the {@link Relabeler} rewrites dimensions, items of
+ * different series may end up in the same one, so items with the timestamp of a sample of their series are always
+ * merged into it, as remote_write rejects series with several samples of the same timestamp.
+ *
+ * A batcher is not thread safe, it is used by the thread parsing the records of an invocation.
+ */
+public class MetricBatcher {
+
+    private static final int EXPECTED_SERIES = 256;
+
+    private final WriteRequestEncoder encoder;
+    private final BatchLimits limits;
+    private final AggregationWindow aggregation;
+    private final SeenSamples seen;
+    private final Relabeler relabeler;
+    private final SeriesLimiter limiter;
+    private final boolean merging;
+
+    private SeriesIndex index = new SeriesIndex(EXPECTED_SERIES);
+    private List<String> records = new ArrayList<>();
+    private Set<String> families = new HashSet<>();
+    private int samples;
+    private long bytes;
+    private long collapsed;
+
+    public MetricBatcher(WriteRequestEncoder encoder, BatchLimits limits) {
+        this(encoder, limits, AggregationWindow.disabled(), Relabeler.NONE, new SeriesLimiter(0));
+    }
+
+    public MetricBatcher(WriteRequestEncoder encoder, BatchLimits limits, AggregationWindow aggregation,
+                         Relabeler relabeler, SeriesLimiter limiter) {
+        this.encoder = encoder;
+        this.limits = limits;
+        this.aggregation = aggregation;
+        this.seen = aggregation.enabled() ? new SeenSamples(aggregation.maxTrackedSamples()) : null;
+        this.relabeler = relabeler;
+        this.limiter = limiter;
+        this.merging = aggregation.enabled() || relabeler.rewrites();
+    }
+
+    /**
+     * Adds an item to the current batch, closing the batch first if the item doesn't fit anymore.
+     *
+     * @param metric The item to add
+     * @param recordId The id of the Firehose record the item was parsed from
+     * @return The batch closed to make room for the item, or null if the item fit in the current batch
+     */
+    public MetricBatch add(CloudWatchStreamMetric metric, String recordId) {
+        Value value = metric.value();
+        // An item without a name can't be written, the endpoint would reject the whole request over it
+        if (value == null || metric.metricName() == null) {
+            return null;
+        }
+        CloudWatchUnit unit = CloudWatchUnit.of(metric.unit());
+        if (seen != null && !seen.add(itemHash(metric, unit, value))) {
+            collapsed++;
+            return null;
+        }
+        metric = relabeler.relabel(metric);
+        if (!limiter.admit(metric, unit)) {
+            return null;
+        }
+        MetricBatch closed = null;
+
+        Series series = index.find(metric.accountId(), metric.namespace(), metric.metricName(), unit, metric.dimensions());
+        long timestamp = seen != null ? aggregation.bucket(metric.timestamp()) : metric.timestamp();
+        if (series != null && merging && series.merge(timestamp, unit.scale(value.min()),
+                unit.scale(value.max()), unit.scale(value.sum()), value.count())) {
+            collapsed++;
+            addRecord(series, recordId);
+            return null;
+        }
+        int sampleBytes = encoder.sampleSize(timestamp);
+        String family = series == null ? encoder.familyName(metric.namespace(), metric.metricName(), unit) : null;
+        int itemBytes = series == null ? sampleBytes + seriesSize(metric, unit, family) : sampleBytes;
+        int itemSeries = series == null ? encoder.seriesPerSeries() : 0;
+        if (samples > 0 && (bytes + itemBytes > limits.maxBytes()
+                || samples + encoder.seriesPerSeries() > limits.maxSamples()
+                || index.size() * encoder.seriesPerSeries() + itemSeries > limits.maxSeries())) {
+            closed = flush();
+            // The item starts the next batch, in which its series is new
+            series = null;
+            family = encoder.familyName(metric.namespace(), metric.metricName(), unit);
+            itemBytes = sampleBytes + seriesSize(metric, unit, family);
+        }
+        if (series == null) {
+            series = index.get(metric.accountId(), metric.namespace(), metric.metricName(), unit, metric.dimensions());
+            families.add(family);
+        }
+
+        // The count is a number of data points, so it is never scaled with the unit
+        series.add(timestamp, unit.scale(value.min()), unit.scale(value.max()),
+                unit.scale(value.sum()), value.count());
+        addRecord(series, recordId);
+        samples += encoder.seriesPerSeries();
+        bytes += itemBytes;
+        return closed;
+    }
+
+    /**
+     * @return The number of items dropped as duplicates or merged into another sample so far
+     */
+    public long collapsed() {
+        return collapsed;
+    }
+
+    private void addRecord(Series series, String recordId) {
+        // Items arrive record by record, so a record only has to be appended when the previous one is complete
+        if (records.isEmpty() || !records.get(records.size() - 1).equals(recordId)) {
+            records.add(recordId);
+        }
+        series.addRecord(records.size() - 1);
+    }
+
+    /**
+     * Hashes the identity of the series, the timestamp and the value of an item.
+     */
+    private static long itemHash(CloudWatchStreamMetric metric, CloudWatchUnit unit, Value value) {
+        long hash = SeriesIndex.fingerprint(metric.accountId(), metric.namespace(), metric.metricName(), unit,
+                metric.dimensions());
+        hash = hash * 31 + metric.timestamp();
+        hash = hash * 31 + Double.doubleToLongBits(value.min());
+        hash = hash * 31 + Double.doubleToLongBits(value.max());
+        hash = hash * 31 + Double.doubleToLongBits(value.sum());
+        hash = hash * 31 + Double.doubleToLongBits(value.count());
+        // The finalizer of MurmurHash3, as the probing of the set relies on the low bits
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private int seriesSize(CloudWatchStreamMetric metric, CloudWatchUnit unit, String family) {
+        int size = encoder.seriesSize(metric.accountId(), metric.metricName(), metric.dimensions(), metric.namespace(), unit);
+        if (!families.contains(family)) {
+            size += encoder.metadataSize(family, metric.namespace(), metric.metricName(), unit);
+        }
+        return size;
+    }
+
+    /**
+     * Closes the current batch.
+     *
+     * @return The batch, or null if nothing was added since the last batch was closed
+     */
+    public MetricBatch flush() {
+        if (index.size() == 0) {
+            return null;
+        }
+        List<Series> series = index.series();
+        for (Series each : series) {
+            each.sort();
+        }
+        MetricBatch batch = new MetricBatch(series, records, samples, bytes);
+        index = new SeriesIndex(Math.max(EXPECTED_SERIES, index.size()));
+        records = new ArrayList<>();
+        families = new HashSet<>();
+        samples = 0;
+        bytes = 0;
+        return batch;
+    }
+}
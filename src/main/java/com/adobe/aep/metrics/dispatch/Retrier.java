@@ -0,0 +1,132 @@
+package com.adobe.aep.metrics.dispatch;
+
+import com.adobe.aep.metrics.transport.RemoteWriteResponse;
+import com.adobe.aep.metrics.transport.RemoteWriteTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Clock;
+
+/**
+ * Repeats a remote_write request according to a {@link RetryPolicy} until it is delivered, rejected for good, or the
+ * invocation runs out of time.
+ *
+ * Responses are classified by their status code:
+ * - 2xx: delivered
+ * - 413: too large, the caller is expected to split the payload rather than send it again
+ * - 408, 429 and 5xx: transient, the endpoint is throttling or unavailable
+ * - 403: retried as well, as the credentials are resolved again for the next attempt
+ * - any other status: rejected, the payload itself is invalid and sending it again won't change that
+ * Connection errors and timeouts are transient.
+ *
+ * A retry is only made when it can complete before the time margin of the invocation: after its backoff, the attempt
+ * itself may take as long as the transport waits before timing out.
+ */
+public class Retrier {
+
+    public enum Outcome {
+        DELIVERED,
+        TOO_LARGE,
+        REJECTED,
+        EXHAUSTED
+    }
+
+    /**
+     * @param outcome How the delivery ended
+     * @param attempts The number of attempts made
+     * @param reason The status or error of the last attempt, for failed deliveries
+     */
+    public record Result(Outcome outcome, int attempts, String reason) {
+    }
+
+    @FunctionalInterface
+    public interface Attempt {
+        /**
+         * Signs and posts the request once.
+         */
+        RemoteWriteResponse post() throws IOException;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(Retrier.class);
+
+    private final RetryPolicy policy;
+    private final long maxAttemptMillis;
+    private final Clock clock;
+
+    /**
+     * @param policy The policy of the retries
+     * @param maxAttemptMillis The longest a single attempt may take, see {@link RemoteWriteTransport#maxPostMillis()}
+     * @param clock The clock the deadline of the invocation is compared with
+     */
+    public Retrier(RetryPolicy policy, long maxAttemptMillis, Clock clock) {
+        this.policy = policy;
+        this.maxAttemptMillis = maxAttemptMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Makes attempts until the request is delivered or can't be retried anymore.
+     *
+     * @param attempt The request
+     * @param deadlineMillis The epoch millis at which the invocation times out
+     * @return The outcome of the last attempt
+     */
+    public Result deliver(Attempt attempt, long deadlineMillis) {
+        String reason;
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            try {
+                RemoteWriteResponse response = attempt.post();
+                int status = response.statusCode();
+                if (response.isSuccessful()) {
+                    return new Result(Outcome.DELIVERED, attempts, null);
+                } else if (status == 413) {
+                    return new Result(Outcome.TOO_LARGE, attempts, "Status 413: " + response.body());
+                } else if (!isTransient(status)) {
+                    return new Result(Outcome.REJECTED, attempts, "Status " + status + ": " + response.body());
+                }
+                reason = "Status " + status + ": " + response.body();
+            } catch (IOException e) {
+                reason = "Error sending to amp: " + e.getMessage();
+            }
+
+            if (attempts >= policy.maxAttempts()) {
+                return new Result(Outcome.EXHAUSTED, attempts, reason);
+            }
+            long delay = policy.delayMillis(attempts);
+            if (delay + maxAttemptMillis > remainingMillis(deadlineMillis)) {
+                logger.debug("Not retrying after {} attempts, the invocation is about to time out", attempts);
+                return new Result(Outcome.EXHAUSTED, attempts, reason);
+            }
+            logger.debug("Attempt {} failed with '{}', retrying in {}ms", attempts, reason, delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new Result(Outcome.EXHAUSTED, attempts, "Interrupted while retrying: " + reason);
+            }
+        }
+    }
+
+    /**
+     * @param deadlineMillis The epoch millis at which the invocation times out
+     * @return Whether an attempt started now would be over before the time margin of the invocation
+     */
+    public boolean canAttempt(long deadlineMillis) {
+        return maxAttemptMillis <= remainingMillis(deadlineMillis);
+    }
+
+    /**
+     * @param deadlineMillis The epoch millis at which the invocation times out
+     * @return The time left until the time margin of the invocation, negative once within it
+     */
+    public long remainingMillis(long deadlineMillis) {
+        return deadlineMillis - policy.timeMarginMillis() - clock.millis();
+    }
+
+    private static boolean isTransient(int status) {
+        return status == 403 || status == 408 || status == 429 || status >= 500;
+    }
+}
@@ -0,0 +1,53 @@
+package com.adobe.aep.metrics.dispatch;
+
+import com.adobe.aep.metrics.Environment;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often and how long a failed remote_write request is retried.
+ *
+ * Retries back off exponentially from `baseDelayMillis` up to `maxDelayMillis`, with full jitter so that the batches
+ * of concurrent invocations throttled at the same time don't retry in lockstep. Retrying stops after `maxAttempts`, or
+ * once the next attempt could still be running less than `timeMarginMillis` before the invocation times out.
+ *
+ * @param maxAttempts The maximum number of attempts, including the first one
+ * @param baseDelayMillis The upper bound of the delay before the first retry
+ * @param maxDelayMillis The upper bound of the delay before any retry
+ * @param timeMarginMillis The time left to the invocation after which no retry is started anymore
+ */
+public record RetryPolicy(
+        int maxAttempts,
+        long baseDelayMillis,
+        long maxDelayMillis,
+        long timeMarginMillis
+) {
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 100;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5_000;
+    public static final long DEFAULT_TIME_MARGIN_MILLIS = 2_000;
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS,
+                DEFAULT_TIME_MARGIN_MILLIS);
+    }
+
+    public static RetryPolicy fromEnvironment() {
+        return new RetryPolicy(
+                Environment.getInt("RETRY_MAX_ATTEMPTS", DEFAULT_MAX_ATTEMPTS),
+                Environment.getLong("RETRY_BASE_DELAY_MS", DEFAULT_BASE_DELAY_MILLIS),
+                Environment.getLong("RETRY_MAX_DELAY_MS", DEFAULT_MAX_DELAY_MILLIS),
+                Environment.getLong("RETRY_TIME_MARGIN_MS", DEFAULT_TIME_MARGIN_MILLIS)
+        );
+    }
+
+    /**
+     * @param retry The number of the retry, starting at 1 for the retry after the first attempt
+     * @return A random delay between zero and the exponential backoff for the retry
+     */
+    public long delayMillis(int retry) {
+        long backoff = baseDelayMillis << Math.min(retry - 1, 30);
+        long bound = Math.min(maxDelayMillis, backoff < 0 ? maxDelayMillis : backoff);
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+}
@@ -0,0 +1,63 @@
+package com.adobe.aep.metrics.encode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A small pool of direct buffers the requests are encoded and compressed into. Buffers are kept across batches and
+ * warm invocations, so a container settles on a handful of payload sized buffers instead of allocating new arrays for
+ * every batch.
+ *
+ * Buffers grow in powers of two. Only `maxPooled` buffers are kept, which is enough for the batches in flight, any
+ * buffer released beyond that is left to the garbage collector.
+ */
+public class BufferPool {
+
+    public static final int DEFAULT_MAX_POOLED = 16;
+    private static final int MIN_CAPACITY = 64 * 1024;
+
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+
+    public BufferPool() {
+        this(DEFAULT_MAX_POOLED);
+    }
+
+    public BufferPool(int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @param capacity The number of bytes needed
+     * @return A cleared direct buffer of at least the given capacity
+     */
+    public ByteBuffer acquire(int capacity) {
+        synchronized (buffers) {
+            Iterator<ByteBuffer> iterator = buffers.iterator();
+            while (iterator.hasNext()) {
+                ByteBuffer buffer = iterator.next();
+                if (buffer.capacity() >= capacity) {
+                    iterator.remove();
+                    return buffer.clear();
+                }
+            }
+        }
+        int size = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1);
+        return ByteBuffer.allocateDirect(size < capacity ? capacity : size);
+    }
+
+    /**
+     * Returns a buffer to the pool, the buffer must not be used afterwards.
+     *
+     * @param buffer A buffer obtained from {@link #acquire(int)}
+     */
+    public void release(ByteBuffer buffer) {
+        synchronized (buffers) {
+            if (buffers.size() < maxPooled) {
+                // Most recently used first, it is the most likely to still be in the cache
+                buffers.addFirst(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.adobe.aep.metrics.encode;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Snappy compressed `WriteRequest`, held in a pooled direct buffer. The payload must be closed once the request has
+ * been sent, to return the buffer to the pool.
+ */
+public final class EncodedPayload implements AutoCloseable {
+
+    private final ByteBuffer buffer;
+    private final int uncompressedSize;
+    private final BufferPool pool;
+    private final Map<String, List<FamilyMetadata>> metadata;
+    private boolean closed;
+
+    EncodedPayload(ByteBuffer buffer, int uncompressedSize, BufferPool pool,
+                   Map<String, List<FamilyMetadata>> metadata) {
+        this.buffer = buffer;
+        this.uncompressedSize = uncompressedSize;
+        this.pool = pool;
+        this.metadata = metadata;
+    }
+
+    /**
+     * @return A read-only view of the compressed bytes, positioned at the start of the payload
+     */
+    public ByteBuffer body() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return The number of compressed bytes
+     */
+    public int size() {
+        return buffer.remaining();
+    }
+
+    /**
+     * @return The number of bytes of the serialized request before compression
+     */
+    public int uncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * @return The number of metric families whose metadata the request carries
+     */
+    public int metadataFamilies() {
+        return metadata.size();
+    }
+
+    /**
+     * @return The metadata the request carries, keyed by the name of the family
+     */
+    Map<String, List<FamilyMetadata>> metadata() {
+        return metadata;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            pool.release(buffer);
+        }
+    }
+}
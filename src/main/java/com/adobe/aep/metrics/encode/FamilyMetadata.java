@@ -0,0 +1,33 @@
+package com.adobe.aep.metrics.encode;
+
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * A protobuf `MetricMetadata` entry, as written by the {@link WriteRequestEncoder}.
+ *
+ * @param type The number of the `MetricType`
+ * @param familyName The name of the metric family
+ * @param help The help text of the family
+ * @param unit The Prometheus unit of the family, empty if it has none
+ */
+record FamilyMetadata(int type, String familyName, String help, String unit) {
+
+    static final int TYPE = 1;
+    static final int FAMILY_NAME = 2;
+    static final int HELP = 4;
+    static final int UNIT = 5;
+
+    /**
+     * @return The encoded size of the message, without its tag and length
+     */
+    int size() {
+        return (type != 0 ? CodedOutputStream.computeEnumSize(TYPE, type) : 0)
+                + stringSize(FAMILY_NAME, familyName)
+                + stringSize(HELP, help)
+                + stringSize(UNIT, unit);
+    }
+
+    private static int stringSize(int field, String value) {
+        return value == null || value.isEmpty() ? 0 : CodedOutputStream.computeStringSize(field, value);
+    }
+}
@@ -0,0 +1,180 @@
+package com.adobe.aep.metrics.encode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A Snappy compressor in plain Java, following the reference implementation. It saves a cold start the extraction and
+ * loading of the native library, at the cost of compressing more slowly.
+ *
+ * The input is compressed in fragments of 64 KB, so every copy fits a 2 byte offset. Each fragment is scanned with a
+ * hash table of the last position of every 4 bytes seen, skipping further ahead the longer nothing matches, so
+ * incompressible data is got through quickly. The hash table is allocated for every call, which keeps the compressor
+ * free of state.
+ */
+final class JavaSnappyCompressor implements SnappyCompressor {
+
+    static final JavaSnappyCompressor INSTANCE = new JavaSnappyCompressor();
+
+    private static final int FRAGMENT_BYTES = 1 << 16;
+    private static final int HASH_BITS = 14;
+    // No match is looked for this close to the end of a fragment, so 8 bytes can always be read at once
+    private static final int INPUT_MARGIN_BYTES = 15;
+
+    private static final int LITERAL = 0;
+    private static final int COPY_1_BYTE_OFFSET = 1;
+    private static final int COPY_2_BYTE_OFFSET = 2;
+
+    private JavaSnappyCompressor() {
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return 32 + length + length / 6;
+    }
+
+    @Override
+    public int compress(ByteBuffer input, ByteBuffer output) {
+        // A duplicate reads in big endian order, whatever the order of the input
+        ByteBuffer in = input.duplicate();
+        int start = in.position();
+        int end = in.limit();
+        int op = writeVarint(output, output.position(), end - start);
+        int[] table = new int[1 << HASH_BITS];
+        int fragment = start;
+        while (fragment < end) {
+            int fragmentEnd = fragment + Math.min(FRAGMENT_BYTES, end - fragment);
+            op = compressFragment(in, fragment, fragmentEnd, output, op, table);
+            fragment = fragmentEnd;
+        }
+        int size = op - output.position();
+        output.limit(op);
+        return size;
+    }
+
+    private static int compressFragment(ByteBuffer in, int base, int end, ByteBuffer out, int op, int[] table) {
+        int nextEmit = base;
+        if (end - base >= INPUT_MARGIN_BYTES) {
+            // Positions are relative to the fragment, a stale or empty entry is caught by comparing the bytes
+            Arrays.fill(table, 0);
+            int ipLimit = end - INPUT_MARGIN_BYTES;
+            int ip = base + 1;
+            int nextHash = hash(in.getInt(ip));
+            scan:
+            while (true) {
+                int skip = 32;
+                int nextIp = ip;
+                int candidate;
+                do {
+                    ip = nextIp;
+                    int hash = nextHash;
+                    nextIp = ip + (skip++ >> 5);
+                    if (nextIp > ipLimit) {
+                        break scan;
+                    }
+                    nextHash = hash(in.getInt(nextIp));
+                    candidate = base + table[hash];
+                    table[hash] = ip - base;
+                } while (in.getInt(ip) != in.getInt(candidate));
+
+                op = emitLiteral(in, nextEmit, ip - nextEmit, out, op);
+
+                // The bytes right after a copy often match again, so look there before scanning again
+                int current;
+                do {
+                    int matchStart = ip;
+                    int matched = 4 + matchLength(in, candidate + 4, ip + 4, end);
+                    ip += matched;
+                    op = emitCopy(out, op, matchStart - candidate, matched);
+                    nextEmit = ip;
+                    if (ip >= ipLimit) {
+                        break scan;
+                    }
+                    table[hash(in.getInt(ip - 1))] = ip - 1 - base;
+                    current = in.getInt(ip);
+                    int hash = hash(current);
+                    candidate = base + table[hash];
+                    table[hash] = ip - base;
+                } while (current == in.getInt(candidate));
+
+                nextHash = hash(in.getInt(++ip));
+            }
+        }
+        if (nextEmit < end) {
+            op = emitLiteral(in, nextEmit, end - nextEmit, out, op);
+        }
+        return op;
+    }
+
+    private static int hash(int bytes) {
+        return (bytes * 0x1e35a7bd) >>> (32 - HASH_BITS);
+    }
+
+    /**
+     * @return The number of bytes from `earlier` which match those from `later`, up to `limit`
+     */
+    private static int matchLength(ByteBuffer in, int earlier, int later, int limit) {
+        int matched = 0;
+        while (later + matched + 8 <= limit) {
+            long difference = in.getLong(earlier + matched) ^ in.getLong(later + matched);
+            if (difference != 0) {
+                return matched + (Long.numberOfLeadingZeros(difference) >>> 3);
+            }
+            matched += 8;
+        }
+        while (later + matched < limit && in.get(earlier + matched) == in.get(later + matched)) {
+            matched++;
+        }
+        return matched;
+    }
+
+    private static int emitLiteral(ByteBuffer in, int start, int length, ByteBuffer out, int op) {
+        int n = length - 1;
+        if (n < 60) {
+            out.put(op++, (byte) (LITERAL | n << 2));
+        } else {
+            // The length follows the tag, in as few little endian bytes as it takes
+            int bytes = n < 1 << 8 ? 1 : n < 1 << 16 ? 2 : n < 1 << 24 ? 3 : 4;
+            out.put(op++, (byte) (LITERAL | (59 + bytes) << 2));
+            for (int i = 0; i < bytes; i++) {
+                out.put(op++, (byte) (n >>> (8 * i)));
+            }
+        }
+        out.put(op, in, start, length);
+        return op + length;
+    }
+
+    private static int emitCopy(ByteBuffer out, int op, int offset, int length) {
+        // A copy holds at most 64 bytes, split so the last one is still at least 4 bytes long
+        while (length >= 68) {
+            op = emitCopy2(out, op, offset, 64);
+            length -= 64;
+        }
+        if (length > 64) {
+            op = emitCopy2(out, op, offset, 60);
+            length -= 60;
+        }
+        if (length < 12 && offset < 2048) {
+            out.put(op++, (byte) (COPY_1_BYTE_OFFSET | (length - 4) << 2 | (offset >>> 8) << 5));
+            out.put(op++, (byte) offset);
+            return op;
+        }
+        return emitCopy2(out, op, offset, length);
+    }
+
+    private static int emitCopy2(ByteBuffer out, int op, int offset, int length) {
+        out.put(op++, (byte) (COPY_2_BYTE_OFFSET | (length - 1) << 2));
+        out.put(op++, (byte) offset);
+        out.put(op++, (byte) (offset >>> 8));
+        return op;
+    }
+
+    private static int writeVarint(ByteBuffer out, int op, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put(op++, (byte) (value & 0x7f | 0x80));
+            value >>>= 7;
+        }
+        out.put(op++, (byte) value);
+        return op;
+    }
+}
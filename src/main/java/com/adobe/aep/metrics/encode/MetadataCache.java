@@ -0,0 +1,76 @@
+package com.adobe.aep.metrics.encode;
+
+import com.adobe.aep.metrics.Environment;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the metadata of the metric families which have been delivered, so a warm container only sends the
+ * metadata of a family again once it changed or once the resend interval has passed. Prometheus itself sends
+ * metadata on an interval rather than with every request, as it hardly ever changes.
+ *
+ * Families are only marked as sent once the request carrying them has been delivered, so the metadata of a failed
+ * request goes out with the next one.
+ */
+public class MetadataCache {
+
+    public static final Duration DEFAULT_RESEND_INTERVAL = Duration.ofMinutes(1);
+    // Far more families than any metric stream has, this only keeps a misbehaving stream from growing the cache
+    private static final int MAX_FAMILIES = 100_000;
+
+    private final long resendIntervalMillis;
+    private final Clock clock;
+    private final Map<String, Sent> sent = new ConcurrentHashMap<>();
+
+    /**
+     * @param resendInterval How long delivered metadata is not sent again, zero to send it with every request
+     * @param clock The clock the interval is measured with
+     */
+    public MetadataCache(Duration resendInterval, Clock clock) {
+        this.resendIntervalMillis = resendInterval.toMillis();
+        this.clock = clock;
+    }
+
+    public static MetadataCache fromEnvironment() {
+        return new MetadataCache(Duration.ofSeconds(Environment.getLong("METADATA_RESEND_INTERVAL_SECONDS",
+                DEFAULT_RESEND_INTERVAL.toSeconds())), Clock.systemUTC());
+    }
+
+    /**
+     * @param family The name of the metric family
+     * @param metadata The metadata of the family as it would be sent now
+     * @return Whether the same metadata was delivered within the resend interval
+     */
+    boolean isFresh(String family, List<FamilyMetadata> metadata) {
+        if (resendIntervalMillis <= 0) {
+            return false;
+        }
+        Sent previous = sent.get(family);
+        return previous != null
+                && clock.millis() - previous.sentAtMillis() < resendIntervalMillis
+                && previous.metadata().equals(metadata);
+    }
+
+    /**
+     * Marks the metadata of the given families as delivered now.
+     *
+     * @param families The metadata of each family, keyed by the name of the family
+     */
+    void delivered(Map<String, List<FamilyMetadata>> families) {
+        if (resendIntervalMillis <= 0 || families.isEmpty()) {
+            return;
+        }
+        if (sent.size() > MAX_FAMILIES) {
+            sent.clear();
+        }
+        long now = clock.millis();
+        families.forEach((family, metadata) -> sent.put(family, new Sent(metadata, now)));
+    }
+
+    private record Sent(List<FamilyMetadata> metadata, long sentAtMillis) {
+    }
+}
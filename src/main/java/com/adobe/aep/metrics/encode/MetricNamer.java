@@ -0,0 +1,222 @@
+package com.adobe.aep.metrics.encode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns CloudWatch metric names and dimension names into valid Prometheus metric and label names, according to a
+ * {@link NamingPolicy}.
+ *
+ * CloudWatch has a small and stable vocabulary, so every name is only sanitized once: results are kept in concurrent
+ * maps keyed by the raw name, shared by the threads encoding batches and kept across warm invocations. The maps are
+ * bounded, once full any new name is sanitized on every call instead of growing the maps without limit.
+ *
+ * Since sanitizing is lossy, distinct CloudWatch names can end up with the same Prometheus name, which merges their
+ * series, or duplicates a label which makes the endpoint reject the whole request. Such collisions are detected when
+ * a name is first cached and logged once. The first raw name of every sanitized name is kept for this alongside the
+ * cache, so it is bounded the same way, and names which no longer fit in the cache aren't checked for collisions.
+ *
+ * Dimensions are never named like the labels the writer adds itself, {@link #NAME_LABEL} and {@link #ACCOUNT_LABEL},
+ * nor with the `__` prefix Prometheus reserves: such a dimension is prefixed with `dimension_` instead.
+ */
+public class MetricNamer {
+
+    public static final int DEFAULT_MAX_CACHED_NAMES = 10_000;
+
+    public static final String NAME_LABEL = "__name__";
+    public static final String ACCOUNT_LABEL = "account";
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricNamer.class);
+    private static final String AWS_NAMESPACE_PREFIX = "AWS/";
+    private static final String RESERVED_LABEL_PREFIX = "__";
+    private static final String DIMENSION_PREFIX = "dimension_";
+
+    private final NamingPolicy policy;
+    private final int maxCachedNames;
+    private final Map<String, Map<String, String>> metricNames = new ConcurrentHashMap<>();
+    private final Map<String, String> labelNames = new ConcurrentHashMap<>();
+    // The first raw name cached for each sanitized name, to detect collisions, at most one entry per cached name
+    private final Map<String, String> metricOwners = new ConcurrentHashMap<>();
+    private final Map<String, String> labelOwners = new ConcurrentHashMap<>();
+    private final AtomicInteger cachedNames = new AtomicInteger();
+
+    public MetricNamer(NamingPolicy policy) {
+        this(policy, DEFAULT_MAX_CACHED_NAMES);
+    }
+
+    public MetricNamer(NamingPolicy policy, int maxCachedNames) {
+        this.policy = policy;
+        this.maxCachedNames = maxCachedNames;
+    }
+
+    /**
+     * @param namespace The CloudWatch namespace of the metric
+     * @param metricName The CloudWatch name of the metric, may be null for a malformed item
+     * @return The Prometheus metric name, without unit or statistic suffix
+     */
+    public String metricName(String namespace, String metricName) {
+        String ns = namespace == null ? "" : namespace;
+        // The maps can't hold a null key
+        metricName = metricName == null ? "" : metricName;
+        Map<String, String> names = metricNames.get(ns);
+        String name = names == null ? null : names.get(metricName);
+        if (name != null) {
+            return name;
+        }
+        name = toMetricName(ns, metricName);
+        if (reserve()) {
+            String owner = ns + "/" + metricName;
+            String previous = metricOwners.putIfAbsent(name, owner);
+            if (previous != null && !previous.equals(owner)) {
+                logger.warn("CloudWatch metrics {} and {} are both named '{}', their series are merged{}", previous,
+                        owner, name, policy.namespacePrefix() ? "" : ", consider METRIC_NAME_NAMESPACE_PREFIX");
+            }
+            metricNames.computeIfAbsent(ns, key -> new ConcurrentHashMap<>()).put(metricName, name);
+        }
+        return name;
+    }
+
+    /**
+     * @param dimension The name of a CloudWatch dimension
+     * @return The Prometheus label name
+     */
+    public String labelName(String dimension) {
+        String name = labelNames.get(dimension);
+        if (name != null) {
+            return name;
+        }
+        name = policy.snakeCase() ? snakeCase(dimension) : dimension;
+        name = sanitize(name, false);
+        boolean reserved = isReserved(name);
+        if (reserved) {
+            name = DIMENSION_PREFIX + name;
+        }
+        if (reserve()) {
+            if (reserved) {
+                logger.warn("CloudWatch dimension '{}' would be named like a label of the writer, it is named '{}'",
+                        dimension, name);
+            }
+            String previous = labelOwners.putIfAbsent(name, dimension);
+            if (previous != null && !previous.equals(dimension)) {
+                logger.warn("CloudWatch dimensions '{}' and '{}' are both named '{}', series with both are rejected",
+                        previous, dimension, name);
+            }
+            labelNames.put(dimension, name);
+        }
+        return name;
+    }
+
+    private static boolean isReserved(String labelName) {
+        return labelName.equals(ACCOUNT_LABEL) || labelName.startsWith(RESERVED_LABEL_PREFIX);
+    }
+
+    private String toMetricName(String namespace, String metricName) {
+        String name = policy.snakeCase() ? snakeCase(metricName) : metricName;
+        if (policy.namespacePrefix() && !namespace.isEmpty()) {
+            String service = namespace.startsWith(AWS_NAMESPACE_PREFIX)
+                    ? namespace.substring(AWS_NAMESPACE_PREFIX.length())
+                    : namespace;
+            name = "aws_" + sanitize(service, false).toLowerCase() + "_" + name;
+        }
+        return sanitize(name, true);
+    }
+
+    /**
+     * Claims a slot in the caches. Racing threads may both cache the same name, which only costs a slot.
+     */
+    private boolean reserve() {
+        return cachedNames.get() < maxCachedNames && cachedNames.getAndIncrement() < maxCachedNames;
+    }
+
+    /**
+     * Returns the input if it is a valid name already, which is the case for almost every CloudWatch name. Otherwise
+     * every character other than a letter, digit or underscore is replaced with an underscore, and so is a leading
+     * digit.
+     *
+     * @param input The name to sanitize
+     * @param allowColon Whether colons are valid, as they are in metric names but not in label names
+     */
+    static String sanitize(String input, boolean allowColon) {
+        if (isValid(input, allowColon)) {
+            return input;
+        }
+        char[] chars = input.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (!isWordChar(chars[i])) {
+                chars[i] = '_';
+            }
+        }
+        if (chars.length > 0 && isDigit(chars[0])) {
+            chars[0] = '_';
+        }
+        return new String(chars);
+    }
+
+    private static boolean isValid(String input, boolean allowColon) {
+        if (input.isEmpty()) {
+            return false;
+        }
+        char first = input.charAt(0);
+        if (!isLetter(first) && first != '_' && !(allowColon && first == ':')) {
+            return false;
+        }
+        for (int i = 1; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (!isWordChar(c) && !(allowColon && c == ':')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts camel case to snake case, keeping acronyms together: `CPUUtilization` becomes `cpu_utilization` and
+     * `HTTPCode_Target_5XX_Count` becomes `http_code_target_5xx_count`. Characters which aren't letters or digits
+     * become underscores, without repeating them.
+     */
+    static String snakeCase(String input) {
+        StringBuilder snake = new StringBuilder(input.length() + 8);
+        int length = input.length();
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (isUpper(c)) {
+                char previous = i > 0 ? input.charAt(i - 1) : 0;
+                char next = i + 1 < length ? input.charAt(i + 1) : 0;
+                boolean wordStart = isLower(previous) || ((isUpper(previous) || isDigit(previous)) && isLower(next));
+                if (wordStart && snake.length() > 0 && snake.charAt(snake.length() - 1) != '_') {
+                    snake.append('_');
+                }
+                snake.append((char) (c + ('a' - 'A')));
+            } else if (isLower(c) || isDigit(c) || c == ':') {
+                snake.append(c);
+            } else if (snake.length() > 0 && snake.charAt(snake.length() - 1) != '_') {
+                snake.append('_');
+            }
+        }
+        return snake.toString();
+    }
+
+    private static boolean isWordChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
+    private static boolean isLetter(char c) {
+        return isLower(c) || isUpper(c);
+    }
+
+    private static boolean isLower(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,29 @@
+package com.adobe.aep.metrics.encode;
+
+import com.adobe.aep.metrics.Environment;
+
+/**
+ * How CloudWatch metric and dimension names are turned into Prometheus names. By default names are only sanitized,
+ * so `ConsumedReadCapacityUnits` stays as is.
+ *
+ * @param snakeCase Whether camel case names are converted to snake case, `ConsumedReadCapacityUnits` becomes
+ *                  `consumed_read_capacity_units` and the `TableName` dimension becomes `table_name`
+ * @param namespacePrefix Whether metric names are prefixed with `aws_` and the namespace, `AWS/DynamoDB` metrics
+ *                        become `aws_dynamodb_...`. Metrics of different namespaces with the same name otherwise end
+ *                        up in the same series
+ */
+public record NamingPolicy(
+        boolean snakeCase,
+        boolean namespacePrefix
+) {
+    public static NamingPolicy defaults() {
+        return new NamingPolicy(false, false);
+    }
+
+    public static NamingPolicy fromEnvironment() {
+        return new NamingPolicy(
+                Environment.getBoolean("METRIC_NAME_SNAKE_CASE", false),
+                Environment.getBoolean("METRIC_NAME_NAMESPACE_PREFIX", false)
+        );
+    }
+}
@@ -0,0 +1,28 @@
+package com.adobe.aep.metrics.encode;
+
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses with the native library bundled in snappy-java. The library is extracted to the temporary directory and
+ * loaded the first time this class is used, not when it is selected.
+ */
+final class NativeSnappyCompressor implements SnappyCompressor {
+
+    static final NativeSnappyCompressor INSTANCE = new NativeSnappyCompressor();
+
+    private NativeSnappyCompressor() {
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return Snappy.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(ByteBuffer input, ByteBuffer output) throws IOException {
+        return Snappy.compress(input, output);
+    }
+}
@@ -0,0 +1,49 @@
+package com.adobe.aep.metrics.encode;
+
+import com.adobe.aep.metrics.Environment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses serialized requests into the raw Snappy block format remote_write expects. Compressors are shared by the
+ * sending threads, so implementations must be thread safe.
+ */
+public interface SnappyCompressor {
+
+    /**
+     * @param length The number of bytes to compress
+     * @return The largest number of bytes they may compress to
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * Compresses the input, from its position to its limit, into the output at its position. The limit of the output
+     * is set to the end of the compressed bytes, neither position is moved.
+     *
+     * @return The number of compressed bytes
+     * @throws IOException If the input can't be compressed
+     */
+    int compress(ByteBuffer input, ByteBuffer output) throws IOException;
+
+    /**
+     * @return The compressor of snappy-java, which extracts and loads its native library on first use
+     */
+    static SnappyCompressor nativeLibrary() {
+        return NativeSnappyCompressor.INSTANCE;
+    }
+
+    /**
+     * @return A compressor in plain Java, which is slower than the native library but needs nothing to be loaded
+     */
+    static SnappyCompressor pureJava() {
+        return JavaSnappyCompressor.INSTANCE;
+    }
+
+    /**
+     * @return The pure Java compressor when `SNAPPY_PURE_JAVA` is set, the native library otherwise
+     */
+    static SnappyCompressor fromEnvironment() {
+        return Environment.getBoolean("SNAPPY_PURE_JAVA", false) ? pureJava() : nativeLibrary();
+    }
+}
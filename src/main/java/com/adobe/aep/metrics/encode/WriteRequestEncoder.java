@@ -0,0 +1,382 @@
+package com.adobe.aep.metrics.encode;
+
+import com.adobe.aep.metrics.series.CloudWatchUnit;
+import com.adobe.aep.metrics.series.Series;
+import com.adobe.aep.metrics.series.Statistic;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import prometheus.Types;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes series into the protobuf `WriteRequest` of the remote_write protocol, and estimates the encoded size of
+ * series before they are encoded, so batches can be cut before they grow past the limits of the endpoint.
+ *
+ * The request is written field by field with a `CodedOutputStream` rather than through the generated builders, so no
+ * message objects are created per label or sample. The exact size of every nested message is computed up front, the
+ * request is written into a pooled direct buffer and compressed straight into a second one, which is handed to the
+ * transport as is.
+ */
+public class WriteRequestEncoder {
+
+    private static final String HELP_PREFIX = "CloudWatch metric ";
+    private static final int STATISTICS = Statistic.values().length;
+    // Field numbers of the remote_write messages, see types.proto and remote.proto
+    private static final int WRITE_REQUEST_TIMESERIES = 1;
+    private static final int WRITE_REQUEST_METADATA = 3;
+    private static final int TIME_SERIES_LABELS = 1;
+    private static final int TIME_SERIES_SAMPLES = 2;
+    private static final int LABEL_NAME = 1;
+    private static final int LABEL_VALUE = 2;
+    private static final int SAMPLE_VALUE = 1;
+    private static final int SAMPLE_TIMESTAMP = 2;
+
+    private final String metricNameLabel = MetricNamer.NAME_LABEL;
+    private final String metricAccountLabel = MetricNamer.ACCOUNT_LABEL;
+
+    private final BufferPool buffers;
+    private final MetricNamer namer;
+    private final MetadataCache metadataCache;
+    private final SnappyCompressor compressor;
+
+    private final Logger logger = LoggerFactory.getLogger(WriteRequestEncoder.class);
+
+    /**
+     * Creates an encoder with the default naming, which sends metadata with every request.
+     */
+    public WriteRequestEncoder() {
+        this(new BufferPool(), new MetricNamer(NamingPolicy.defaults()), new MetadataCache(Duration.ZERO, Clock.systemUTC()));
+    }
+
+    /**
+     * @param buffers The pool the requests are encoded and compressed into
+     * @param namer The namer turning CloudWatch names into Prometheus names
+     * @param metadataCache The metadata delivered recently, which is left out of requests
+     */
+    public WriteRequestEncoder(BufferPool buffers, MetricNamer namer, MetadataCache metadataCache) {
+        this(buffers, namer, metadataCache, SnappyCompressor.nativeLibrary());
+    }
+
+    /**
+     * @param buffers The pool the requests are encoded and compressed into
+     * @param namer The namer turning CloudWatch names into Prometheus names
+     * @param metadataCache The metadata delivered recently, which is left out of requests
+     * @param compressor The compressor of the serialized requests
+     */
+    public WriteRequestEncoder(BufferPool buffers, MetricNamer namer, MetadataCache metadataCache,
+                               SnappyCompressor compressor) {
+        this.buffers = buffers;
+        this.namer = namer;
+        this.metadataCache = metadataCache;
+        this.compressor = compressor;
+    }
+
+    /**
+     * Encodes the given series into a serialized `WriteRequest` and compresses it with Snappy.
+     *
+     * The metadata of every metric family is written once, however many series of the family the request holds, and
+     * is left out entirely if it was delivered recently. Once the request has been delivered, it should be passed to
+     * {@link #delivered(EncodedPayload)}.
+     *
+     * @param series The series to encode
+     * @return The compressed request, which must be closed once it has been sent
+     * @throws IOException If the request can't be compressed
+     */
+    public EncodedPayload encode(List<Series> series) throws IOException {
+        List<EncodedSeries> encodedSeries = new ArrayList<>(series.size());
+        Map<String, List<FamilyMetadata>> families = new LinkedHashMap<>();
+        int size = 0;
+        for (Series s : series) {
+            if (s.size() > 0) {
+                EncodedSeries encoded = this.prepare(s);
+                encodedSeries.add(encoded);
+                size += encoded.size();
+                if (!families.containsKey(encoded.familyName())) {
+                    families.put(encoded.familyName(), this.metadata(s, encoded.familyName()));
+                }
+            }
+        }
+        families.entrySet().removeIf(family -> metadataCache.isFresh(family.getKey(), family.getValue()));
+        for (List<FamilyMetadata> metadata : families.values()) {
+            for (FamilyMetadata m : metadata) {
+                size += lengthDelimitedSize(WRITE_REQUEST_METADATA, m.size());
+            }
+        }
+
+        ByteBuffer uncompressed = buffers.acquire(size);
+        try {
+            CodedOutputStream output = CodedOutputStream.newInstance(uncompressed);
+            // Every time series is written ahead of the metadata, as the generated serializer orders by field number
+            for (EncodedSeries encoded : encodedSeries) {
+                this.writeTimeSeries(output, encoded);
+            }
+            for (List<FamilyMetadata> metadata : families.values()) {
+                this.writeMetadata(output, metadata);
+            }
+            output.flush();
+            uncompressed.flip();
+
+            ByteBuffer compressed = buffers.acquire(compressor.maxCompressedLength(size));
+            try {
+                compressor.compress(uncompressed, compressed);
+            } catch (IOException | RuntimeException e) {
+                buffers.release(compressed);
+                throw e;
+            }
+            return new EncodedPayload(compressed, size, buffers, families);
+        } finally {
+            buffers.release(uncompressed);
+        }
+    }
+
+    /**
+     * Marks the metadata carried by a request as delivered, so it is left out of the next requests.
+     *
+     * @param payload A request which has been accepted by the endpoint
+     */
+    public void delivered(EncodedPayload payload) {
+        metadataCache.delivered(payload.metadata());
+    }
+
+    /**
+     * @return The name of the metric family the series of a CloudWatch metric belong to, which the metadata is sent
+     *         for
+     */
+    public String familyName(String namespace, String metricName, CloudWatchUnit unit) {
+        return namer.metricName(namespace, metricName) + unit.suffix();
+    }
+
+    /**
+     * Estimates the encoded size of the labels of a series, excluding its samples and the metadata of its family.
+     *
+     * @return The estimated number of bytes the series adds to the request
+     */
+    public int seriesSize(String accountId, String metricName, Map<String, String> dimensions, String namespace,
+                          CloudWatchUnit unit) {
+        int labelsSize = 0;
+        if (dimensions != null) {
+            for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+                labelsSize += labelSize(namer.labelName(dimension.getKey()), dimension.getValue());
+            }
+        }
+        labelsSize += labelSize(metricAccountLabel, accountId);
+
+        String familyName = familyName(namespace, metricName, unit);
+        int size = 0;
+        for (Statistic statistic : Statistic.values()) {
+            int timeSeriesSize = labelsSize + labelSize(metricNameLabel, familyName + statistic.suffix());
+            // The length prefix is measured for the labels only, samples can make it a byte or two longer
+            size += CodedOutputStream.computeTagSize(1) + CodedOutputStream.computeUInt32SizeNoTag(timeSeriesSize) + timeSeriesSize;
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the encoded size of the metadata of a metric family, which is sent once per request at most.
+     *
+     * @return The estimated number of bytes the metadata adds to the request
+     */
+    public int metadataSize(String familyName, String namespace, String metricName, CloudWatchUnit unit) {
+        // One gauge family per statistic, which only differ by the suffix of their name
+        int helpLength = HELP_PREFIX.length() + length(namespace) + 1 + length(metricName);
+        int commonSize = CodedOutputStream.computeEnumSize(FamilyMetadata.TYPE, Types.MetricMetadata.MetricType.GAUGE_VALUE)
+                + CodedOutputStream.computeTagSize(FamilyMetadata.HELP) + CodedOutputStream.computeUInt32SizeNoTag(helpLength) + helpLength
+                + CodedOutputStream.computeStringSize(FamilyMetadata.UNIT, unit.prometheusUnit());
+        int size = 0;
+        for (Statistic statistic : Statistic.values()) {
+            size += lengthDelimitedSize(WRITE_REQUEST_METADATA,
+                    commonSize + CodedOutputStream.computeStringSize(FamilyMetadata.FAMILY_NAME, familyName + statistic.suffix()));
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the encoded size of a single sample across all the statistics of a series.
+     *
+     * @param timestamp The timestamp of the sample
+     * @return The estimated number of bytes the sample adds to the request
+     */
+    public int sampleSize(long timestamp) {
+        int sampleSize = CodedOutputStream.computeDoubleSize(1, 0) + CodedOutputStream.computeInt64Size(2, timestamp);
+        return STATISTICS * (CodedOutputStream.computeTagSize(2) + CodedOutputStream.computeUInt32SizeNoTag(sampleSize) + sampleSize);
+    }
+
+    /**
+     * @return The number of remote_write series a {@link Series} is encoded as
+     */
+    public int seriesPerSeries() {
+        return STATISTICS;
+    }
+
+    private static int labelSize(String name, String value) {
+        int size = CodedOutputStream.computeStringSize(1, name) + CodedOutputStream.computeStringSize(2, value == null ? "" : value);
+        return CodedOutputStream.computeTagSize(1) + CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    }
+
+    private static int length(String value) {
+        // A missing value is written as "null" in the help
+        return value == null ? 4 : value.length();
+    }
+
+    /**
+     * This function lays out the protobuf `TimeSeries` for a particular series. Every statistic of the series is
+     * written as its own `TimeSeries`, named after the metric, its unit and the statistic, e.g.
+     * `SuccessfulRequestLatency_seconds_sum`. Each of them has an account label and labels for each of the dimensions
+     * of the series, sorted by name as remote_write requires.
+     *
+     * @param series The series with the samples aggregated for a particular metric
+     * @return The labels, names and exact encoded sizes of the messages of the series
+     */
+    private EncodedSeries prepare(Series series) {
+        List<Label> labels = new ArrayList<>();
+        if (series.dimensions() != null) {
+            for (Map.Entry<String, String> dimension : series.dimensions().entrySet()) {
+                labels.add(new Label(namer.labelName(dimension.getKey()), dimension.getValue()));
+                logger.debug("Adding dimension {} with value {} for metric '{}'", dimension.getKey(), dimension.getValue(), series.metricName());
+            }
+        }
+        labels.add(new Label(metricAccountLabel, series.accountId()));
+        labels.sort(Comparator.comparing(Label::name));
+        // The name label is the only one which differs between the statistics, find where it goes in the sort order
+        int nameIndex = 0;
+        while (nameIndex < labels.size() && labels.get(nameIndex).name().compareTo(metricNameLabel) < 0) {
+            nameIndex++;
+        }
+        int labelsSize = 0;
+        for (Label label : labels) {
+            labelsSize += lengthDelimitedSize(TIME_SERIES_LABELS, label.size());
+        }
+
+        String familyName = familyName(series.namespace(), series.metricName(), series.unit());
+        String[] names = new String[STATISTICS];
+        int[] nameSizes = new int[STATISTICS];
+        int[] timeSeriesSizes = new int[STATISTICS];
+        int size = 0;
+        for (Statistic statistic : Statistic.values()) {
+            int index = statistic.ordinal();
+            names[index] = familyName + statistic.suffix();
+            nameSizes[index] = new Label(metricNameLabel, names[index]).size();
+            int timeSeriesSize = labelsSize + lengthDelimitedSize(TIME_SERIES_LABELS, nameSizes[index]);
+            for (int i = 0; i < series.size(); i++) {
+                timeSeriesSize += lengthDelimitedSize(TIME_SERIES_SAMPLES, sampleMessageSize(statistic.value(series, i), series.timestamp(i)));
+            }
+            timeSeriesSizes[index] = timeSeriesSize;
+            size += lengthDelimitedSize(WRITE_REQUEST_TIMESERIES, timeSeriesSize);
+        }
+        logger.debug("Write record for {}, adding {} samples in {}", series.metricName(), series.size(), series.unit());
+        return new EncodedSeries(series, familyName, labels, nameIndex, names, nameSizes, timeSeriesSizes, size);
+    }
+
+    /**
+     * Lays out the protobuf `MetricMetadata` of the families of a series, a gauge family for each statistic. The sum
+     * and count are gauges too rather than a summary: CloudWatch reports them per aggregation period, so they don't
+     * grow like the cumulative sum and count of a Prometheus summary, and a `rate()` over them would be meaningless.
+     */
+    private List<FamilyMetadata> metadata(Series series, String familyName) {
+        String help = HELP_PREFIX + series.namespace() + "/" + series.metricName();
+        String unit = series.unit().prometheusUnit();
+        List<FamilyMetadata> metadata = new ArrayList<>(STATISTICS);
+        for (Statistic statistic : Statistic.values()) {
+            metadata.add(new FamilyMetadata(Types.MetricMetadata.MetricType.GAUGE_VALUE, familyName + statistic.suffix(), help, unit));
+        }
+        return metadata;
+    }
+
+    private void writeTimeSeries(CodedOutputStream output, EncodedSeries encoded) throws IOException {
+        Series series = encoded.series();
+        for (Statistic statistic : Statistic.values()) {
+            int index = statistic.ordinal();
+            writeLengthDelimited(output, WRITE_REQUEST_TIMESERIES, encoded.timeSeriesSizes()[index]);
+            List<Label> labels = encoded.labels();
+            for (int i = 0; i < labels.size(); i++) {
+                if (i == encoded.nameIndex()) {
+                    writeLabel(output, metricNameLabel, encoded.names()[index], encoded.nameSizes()[index]);
+                }
+                Label label = labels.get(i);
+                writeLabel(output, label.name(), label.value(), label.size());
+            }
+            if (encoded.nameIndex() == labels.size()) {
+                writeLabel(output, metricNameLabel, encoded.names()[index], encoded.nameSizes()[index]);
+            }
+            for (int i = 0; i < series.size(); i++) {
+                double value = statistic.value(series, i);
+                long timestamp = series.timestamp(i);
+                writeLengthDelimited(output, TIME_SERIES_SAMPLES, sampleMessageSize(value, timestamp));
+                // Like the generated serializer, fields holding their default value are left out
+                if (Double.doubleToRawLongBits(value) != 0) {
+                    output.writeDouble(SAMPLE_VALUE, value);
+                }
+                if (timestamp != 0) {
+                    output.writeInt64(SAMPLE_TIMESTAMP, timestamp);
+                }
+            }
+        }
+    }
+
+    private void writeMetadata(CodedOutputStream output, List<FamilyMetadata> family) throws IOException {
+        for (FamilyMetadata metadata : family) {
+            writeLengthDelimited(output, WRITE_REQUEST_METADATA, metadata.size());
+            if (metadata.type() != 0) {
+                output.writeEnum(FamilyMetadata.TYPE, metadata.type());
+            }
+            writeString(output, FamilyMetadata.FAMILY_NAME, metadata.familyName());
+            writeString(output, FamilyMetadata.HELP, metadata.help());
+            writeString(output, FamilyMetadata.UNIT, metadata.unit());
+        }
+    }
+
+    private static void writeLabel(CodedOutputStream output, String name, String value, int size) throws IOException {
+        writeLengthDelimited(output, TIME_SERIES_LABELS, size);
+        writeString(output, LABEL_NAME, name);
+        writeString(output, LABEL_VALUE, value);
+    }
+
+    private static void writeLengthDelimited(CodedOutputStream output, int field, int size) throws IOException {
+        output.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(size);
+    }
+
+    private static void writeString(CodedOutputStream output, int field, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            output.writeString(field, value);
+        }
+    }
+
+    private static int lengthDelimitedSize(int field, int size) {
+        return CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    }
+
+    private static int stringSize(int field, String value) {
+        return value == null || value.isEmpty() ? 0 : CodedOutputStream.computeStringSize(field, value);
+    }
+
+    private static int sampleMessageSize(double value, long timestamp) {
+        return (Double.doubleToRawLongBits(value) != 0 ? CodedOutputStream.computeDoubleSize(SAMPLE_VALUE, value) : 0)
+                + (timestamp != 0 ? CodedOutputStream.computeInt64Size(SAMPLE_TIMESTAMP, timestamp) : 0);
+    }
+
+    private record Label(String name, String value) {
+        int size() {
+            return stringSize(LABEL_NAME, name) + stringSize(LABEL_VALUE, value);
+        }
+    }
+
+    /**
+     * A series laid out for writing: its family, sorted labels, the name of each statistic and the sizes of the
+     * messages.
+     */
+    private record EncodedSeries(Series series, String familyName, List<Label> labels, int nameIndex, String[] names,
+                                 int[] nameSizes, int[] timeSeriesSizes, int size) {
+    }
+}
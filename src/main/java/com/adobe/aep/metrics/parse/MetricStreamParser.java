@@ -0,0 +1,159 @@
+package com.adobe.aep.metrics.parse;
+
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.adobe.aep.metrics.records.Value;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses the newline delimited JSON of a CloudWatch metric stream straight out of a Firehose record.
+ *
+ * The record data is read in place with a streaming Jackson parser: neither the whole payload nor the individual
+ * lines are ever turned into strings, and only the fields of {@link CloudWatchStreamMetric} are materialized.
+ * Repeated string values are deduplicated through a {@link StringCache}, dimension names are already canonicalized
+ * by the parser's own symbol table.
+ */
+public class MetricStreamParser {
+
+    private final JsonFactory jsonFactory;
+    private final StringCache strings;
+
+    public MetricStreamParser(JsonFactory jsonFactory, StringCache strings) {
+        this.jsonFactory = jsonFactory;
+        this.strings = strings;
+    }
+
+    /**
+     * Opens a reader over the metric stream items in the given record data. The buffer's position is left untouched.
+     *
+     * @param data The data of a Firehose record
+     * @return A reader returning the items one at a time
+     * @throws IOException If the parser could not be created
+     */
+    public Reader open(ByteBuffer data) throws IOException {
+        JsonParser parser = data.hasArray()
+                ? jsonFactory.createParser(data.array(), data.arrayOffset() + data.position(), data.remaining())
+                : jsonFactory.createParser(new ByteBufferBackedInputStream(data.duplicate()));
+        return new Reader(parser, strings);
+    }
+
+    public static class Reader implements Closeable {
+
+        private final JsonParser parser;
+        private final StringCache strings;
+
+        Reader(JsonParser parser, StringCache strings) {
+            this.parser = parser;
+            this.strings = strings;
+        }
+
+        /**
+         * Reads the next metric stream item.
+         *
+         * @return The item, or null once the data is exhausted
+         * @throws IOException If the data isn't a valid metric stream
+         */
+        public CloudWatchStreamMetric next() throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a metric stream item, found " + token);
+            }
+
+            String metricStreamName = null;
+            String accountId = null;
+            String region = null;
+            String namespace = null;
+            String metricName = null;
+            Map<String, String> dimensions = null;
+            long timestamp = 0;
+            Value value = null;
+            String unit = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "metric_stream_name" -> metricStreamName = text();
+                    case "account_id" -> accountId = text();
+                    case "region" -> region = text();
+                    case "namespace" -> namespace = text();
+                    case "metric_name" -> metricName = text();
+                    case "dimensions" -> dimensions = dimensions();
+                    case "timestamp" -> timestamp = parser.getLongValue();
+                    case "value" -> value = value();
+                    case "unit" -> unit = text();
+                    default -> parser.skipChildren();
+                }
+            }
+            return new CloudWatchStreamMetric(metricStreamName, accountId, region, namespace, metricName, dimensions,
+                    timestamp, value, unit);
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+
+        private String text() throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            return strings.get(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        }
+
+        private Map<String, String> dimensions() throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            expect(JsonToken.START_OBJECT);
+            if (parser.nextToken() == JsonToken.END_OBJECT) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> dimensions = new LinkedHashMap<>(8);
+            do {
+                String name = parser.currentName();
+                parser.nextToken();
+                dimensions.put(name, text());
+            } while (parser.nextToken() == JsonToken.FIELD_NAME);
+            return dimensions;
+        }
+
+        private Value value() throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            expect(JsonToken.START_OBJECT);
+            double min = 0, max = 0, sum = 0, count = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "min" -> min = parser.getDoubleValue();
+                    case "max" -> max = parser.getDoubleValue();
+                    case "sum" -> sum = parser.getDoubleValue();
+                    case "count" -> count = parser.getDoubleValue();
+                    default -> parser.skipChildren();
+                }
+            }
+            return new Value(min, max, sum, count);
+        }
+
+        private void expect(JsonToken expected) throws IOException {
+            if (parser.currentToken() != expected) {
+                throw new JsonParseException(parser, "Expected " + expected + ", found " + parser.currentToken());
+            }
+        }
+    }
+}
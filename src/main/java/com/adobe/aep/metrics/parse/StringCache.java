@@ -0,0 +1,88 @@
+package com.adobe.aep.metrics.parse;
+
+/**
+ * A bounded, lossy cache of strings which can be looked up by their characters, without creating a string first.
+ *
+ * Metric streams repeat a small vocabulary of values (namespaces, metric names, units, account ids, dimension
+ * values) in every item, so handing out the same instance for each of them avoids allocating a new string per
+ * field. The cache is direct mapped: a miss replaces whatever string occupied the slot, which bounds the memory
+ * and lets rarely repeated values, like per request ids, fall out again without any bookkeeping.
+ *
+ * The cache may be shared between threads. Slots are written without synchronization, which is safe as strings are
+ * immutable and a lost update only costs a later miss.
+ */
+public class StringCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    // Longer values are unlikely to repeat and not worth hashing
+    private static final int MAX_CACHED_LENGTH = 128;
+
+    private final String[] entries;
+    private final int mask;
+
+    public StringCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of slots, rounded up to a power of two
+     */
+    public StringCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.entries = new String[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns a string equal to the given characters, reusing a cached instance when there is one.
+     *
+     * @param chars The buffer holding the characters
+     * @param offset The offset of the first character in the buffer
+     * @param length The number of characters
+     * @return The cached string, or a newly created one which is now cached
+     */
+    public String get(char[] chars, int offset, int length) {
+        if (length > MAX_CACHED_LENGTH) {
+            return new String(chars, offset, length);
+        }
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        // Same hash as String.hashCode(), spread so that similar names don't collide in the low bits
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String entry = entries[index];
+        if (entry != null && matches(entry, chars, offset, length)) {
+            return entry;
+        }
+        String value = new String(chars, offset, length);
+        entries[index] = value;
+        return value;
+    }
+
+    public String get(String value) {
+        if (value == null || value.length() > MAX_CACHED_LENGTH) {
+            return value;
+        }
+        int hash = value.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String entry = entries[index];
+        if (value.equals(entry)) {
+            return entry;
+        }
+        entries[index] = value;
+        return value;
+    }
+
+    private static boolean matches(String entry, char[] chars, int offset, int length) {
+        if (entry.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (entry.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,32 @@
+package com.adobe.aep.metrics.relabel;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A rule rewriting the dimensions of the metric stream items of some namespaces, before they become labels. Every
+ * action is optional, and they are applied in the order of the parameters below.
+ *
+ * @param namespace The namespace the rule applies to, a prefix when it ends with `*`, or every namespace when unset
+ * @param keep The only dimensions to keep, an allow list
+ * @param drop The dimensions to drop, a deny list
+ * @param hash The dimensions whose values are replaced by one of the given number of buckets, chosen by their hash
+ * @param rename The new names of dimensions, a dimension keeps its name when the item has one of the new name already
+ */
+public record RelabelRule(
+        String namespace,
+        Set<String> keep,
+        Set<String> drop,
+        Map<String, Integer> hash,
+        Map<String, String> rename
+) {
+    boolean matches(String namespace) {
+        if (this.namespace == null || this.namespace.equals("*")) {
+            return true;
+        }
+        if (this.namespace.endsWith("*")) {
+            return namespace != null && namespace.startsWith(this.namespace.substring(0, this.namespace.length() - 1));
+        }
+        return this.namespace.equals(namespace);
+    }
+}
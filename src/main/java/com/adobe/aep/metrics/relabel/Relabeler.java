@@ -0,0 +1,186 @@
+package com.adobe.aep.metrics.relabel;
+
+import com.adobe.aep.metrics.Environment;
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rewrites the dimensions of metric stream items with a list of {@link RelabelRule}s, so that a noisy dimension can
+ * be dropped, or its values bucketed, before it multiplies the number of series.
+ *
+ * The rules are compiled lazily for every namespace, into the decision for each dimension name, since the names of a
+ * namespace are few while their values are not. Items of a namespace no rule applies to, and items none of whose
+ * dimensions change, are returned as they are.
+ *
+ * A dimension is only renamed when the item has no dimension of the new name yet, so that the values of two
+ * dimensions are never merged into a single label.
+ *
+ * A relabeler is thread safe, and kept across invocations.
+ */
+public final class Relabeler {
+
+    public static final Relabeler NONE = new Relabeler(List.of());
+
+    private static final int MAX_CACHED_DECISIONS = 10_000;
+    private static final Decision DROPPED = new Decision(null, 0);
+
+    private final List<RelabelRule> rules;
+    private final Map<String, CompiledRules> namespaces = new ConcurrentHashMap<>();
+    private final CompiledRules noNamespace;
+
+    public Relabeler(List<RelabelRule> rules) {
+        this.rules = List.copyOf(rules);
+        this.noNamespace = compile(null);
+        for (RelabelRule rule : rules) {
+            if (rule.hash() != null) {
+                rule.hash().forEach((dimension, buckets) -> {
+                    if (buckets == null || buckets < 1) {
+                        throw new IllegalArgumentException("Invalid number of buckets for dimension " + dimension + ": " + buckets);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Reads the rules from the `RELABEL_RULES` environment variable, a JSON array of rules. Jackson databind is only
+     * loaded when there are rules to read.
+     */
+    public static Relabeler fromEnvironment() {
+        String json = Environment.get("RELABEL_RULES", "");
+        if (json.isEmpty()) {
+            return NONE;
+        }
+        try {
+            return new Relabeler(new ObjectMapper().readValue(json, new TypeReference<List<RelabelRule>>() {
+            }));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid RELABEL_RULES: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    /**
+     * @return Whether any rule is configured, in which case items of different series may end up in the same one
+     */
+    public boolean rewrites() {
+        return !rules.isEmpty();
+    }
+
+    /**
+     * @return The item with its dimensions rewritten, or the item itself if none of them changes
+     */
+    public CloudWatchStreamMetric relabel(CloudWatchStreamMetric metric) {
+        Map<String, String> dimensions = metric.dimensions();
+        if (rules.isEmpty() || dimensions == null || dimensions.isEmpty()) {
+            return metric;
+        }
+        CompiledRules compiled = metric.namespace() == null ? noNamespace
+                : namespaces.computeIfAbsent(metric.namespace(), this::compile);
+        if (compiled.rules.isEmpty()) {
+            return metric;
+        }
+
+        Map<String, String> relabeled = null;
+        for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+            Decision decision = compiled.decision(dimension.getKey());
+            if (relabeled == null) {
+                if (decision.unchanged(dimension.getKey())) {
+                    continue;
+                }
+                // Copy the dimensions before this one, which were all unchanged
+                relabeled = new LinkedHashMap<>(dimensions.size() * 2);
+                for (Map.Entry<String, String> previous : dimensions.entrySet()) {
+                    if (previous.getKey().equals(dimension.getKey())) {
+                        break;
+                    }
+                    relabeled.put(previous.getKey(), previous.getValue());
+                }
+            }
+            if (decision != DROPPED) {
+                String name = decision.name();
+                // A rename never overwrites a dimension of the item, nor one renamed before it
+                if (!name.equals(dimension.getKey()) && (dimensions.containsKey(name) || relabeled.containsKey(name))) {
+                    name = dimension.getKey();
+                }
+                relabeled.put(name, decision.value(dimension.getValue()));
+            }
+        }
+        if (relabeled == null) {
+            return metric;
+        }
+        return new CloudWatchStreamMetric(metric.metricsStreamName(), metric.accountId(), metric.region(),
+                metric.namespace(), metric.metricName(), relabeled, metric.timestamp(), metric.value(), metric.unit());
+    }
+
+    private CompiledRules compile(String namespace) {
+        return new CompiledRules(rules.stream().filter(rule -> rule.matches(namespace)).toList());
+    }
+
+    /**
+     * The rules applying to a namespace, with the decisions taken so far.
+     */
+    private static final class CompiledRules {
+        private final List<RelabelRule> rules;
+        private final Map<String, Decision> decisions = new ConcurrentHashMap<>();
+
+        CompiledRules(List<RelabelRule> rules) {
+            this.rules = rules;
+        }
+
+        Decision decision(String dimension) {
+            Decision decision = decisions.get(dimension);
+            if (decision == null) {
+                decision = decide(dimension);
+                // The names are bounded by the namespace in practice, but a malformed stream shouldn't grow the cache
+                if (decisions.size() < MAX_CACHED_DECISIONS) {
+                    decisions.put(dimension, decision);
+                }
+            }
+            return decision;
+        }
+
+        private Decision decide(String dimension) {
+            String name = dimension;
+            int buckets = 0;
+            for (RelabelRule rule : rules) {
+                if (rule.keep() != null && !rule.keep().contains(name)) {
+                    return DROPPED;
+                }
+                if (rule.drop() != null && rule.drop().contains(name)) {
+                    return DROPPED;
+                }
+                if (rule.hash() != null && rule.hash().containsKey(name)) {
+                    buckets = rule.hash().get(name);
+                }
+                if (rule.rename() != null && rule.rename().containsKey(name)) {
+                    name = rule.rename().get(name);
+                }
+            }
+            return new Decision(name, buckets);
+        }
+    }
+
+    /**
+     * What happens to a dimension: its new name, and the number of buckets its values are hashed into, if any.
+     */
+    private record Decision(String name, int buckets) {
+        boolean unchanged(String dimension) {
+            return buckets == 0 && dimension.equals(name);
+        }
+
+        String value(String value) {
+            if (buckets == 0 || value == null) {
+                return value;
+            }
+            // String hashes are specified, so a value lands in the same bucket in every invocation
+            return Integer.toString(Math.floorMod(value.hashCode(), buckets));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.adobe.aep.metrics.relabel;
+
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.adobe.aep.metrics.series.CloudWatchUnit;
+import com.adobe.aep.metrics.series.LongSet;
+import com.adobe.aep.metrics.series.SeriesIndex;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Caps the number of distinct series of every metric family within an invocation. Once a family has reached the cap,
+ * items of series it hasn't seen yet are dropped, while the series admitted so far keep flowing.
+ *
+ * Series are counted exactly, by fingerprint, in a primitive set per family which never grows past the cap, so memory
+ * stays bounded by the number of families times the cap, without boxing a fingerprint per item.
+ *
+ * A limiter is not thread safe, it is used by the thread parsing the records of an invocation.
+ */
+public final class SeriesLimiter {
+
+    // Most families have a handful of series, the set of a family grows from there
+    private static final int INITIAL_SERIES_PER_FAMILY = 8;
+
+    private final int maxSeriesPerFamily;
+    // Keyed by namespace, then metric name, so that looking up a family doesn't allocate
+    private final Map<String, Map<String, Family>> families = new HashMap<>();
+    private long dropped;
+
+    /**
+     * @param maxSeriesPerFamily The maximum number of series of a family, or zero for no limit
+     */
+    public SeriesLimiter(int maxSeriesPerFamily) {
+        this.maxSeriesPerFamily = maxSeriesPerFamily;
+    }
+
+    /**
+     * @param metric The item, as relabeled
+     * @param unit The unit of the item, which is part of the identity of its series
+     * @return Whether the item is to be written, false if it would start a series past the cap of its family
+     */
+    public boolean admit(CloudWatchStreamMetric metric, CloudWatchUnit unit) {
+        if (maxSeriesPerFamily <= 0) {
+            return true;
+        }
+        Family family = families.computeIfAbsent(metric.namespace(), namespace -> new HashMap<>())
+                .computeIfAbsent(metric.metricName(), metricName -> new Family(maxSeriesPerFamily));
+        long fingerprint = SeriesIndex.fingerprint(metric.accountId(), metric.namespace(), metric.metricName(), unit,
+                metric.dimensions());
+        if (family.series.contains(fingerprint)) {
+            return true;
+        }
+        if (family.series.size() < maxSeriesPerFamily) {
+            family.series.add(fingerprint);
+            return true;
+        }
+        family.dropped++;
+        dropped++;
+        return false;
+    }
+
+    /**
+     * @return The number of items dropped so far
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    /**
+     * @return The number of items dropped for every family which reached the cap, keyed by `namespace/metric name`
+     */
+    public Map<String, Long> droppedByFamily() {
+        Map<String, Long> report = new TreeMap<>();
+        families.forEach((namespace, metrics) -> metrics.forEach((metricName, family) -> {
+            if (family.dropped > 0) {
+                report.put(namespace + "/" + metricName, family.dropped);
+            }
+        }));
+        return report;
+    }
+
+    private static final class Family {
+        // Only added to below the cap, so it never grows past it
+        private final LongSet series;
+        private long dropped;
+
+        Family(int maxSeries) {
+            this.series = new LongSet(Math.min(maxSeries, INITIAL_SERIES_PER_FAMILY));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.adobe.aep.metrics.series;
+
+import com.adobe.aep.metrics.Environment;
+
+/**
+ * Settings of the optional pre-aggregation of the samples of a batch. Metric streams can deliver the same data point
+ * more than once, and late updates for a minute which was already delivered, often within the same Firehose event.
+ * With a window set, samples of a series falling into the same window are merged into a single sample at the start of
+ * the window, and exact duplicates of an item are dropped rather than merged.
+ *
+ * Duplicates are recognized by a 64 bit hash of the series, timestamp and value of the items seen in the invocation,
+ * at most `maxTrackedSamples` of them are kept at a time.
+ *
+ * @param windowMillis The width of the window, a multiple of the one minute granularity of metric streams, or zero
+ *                     to disable pre-aggregation
+ * @param maxTrackedSamples The maximum number of items remembered to recognize duplicates
+ */
+public record AggregationWindow(
+        long windowMillis,
+        int maxTrackedSamples
+) {
+    public static final int DEFAULT_MAX_TRACKED_SAMPLES = 100_000;
+
+    public static AggregationWindow disabled() {
+        return new AggregationWindow(0, DEFAULT_MAX_TRACKED_SAMPLES);
+    }
+
+    public static AggregationWindow fromEnvironment() {
+        return new AggregationWindow(
+                Environment.getLong("AGGREGATION_WINDOW_SECONDS", 0) * 1000,
+                Environment.getInt("AGGREGATION_MAX_TRACKED_SAMPLES", DEFAULT_MAX_TRACKED_SAMPLES)
+        );
+    }
+
+    public boolean enabled() {
+        return windowMillis > 0;
+    }
+
+    /**
+     * @return The start of the window the timestamp falls in
+     */
+    public long bucket(long timestamp) {
+        return timestamp - Math.floorMod(timestamp, windowMillis);
+    }
+}
@@ -0,0 +1,111 @@
+package com.adobe.aep.metrics.series;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The units of CloudWatch metrics, and how they are written to Prometheus.
+ *
+ * Following the Prometheus naming conventions, the unit becomes a suffix of the metric name. Durations are converted
+ * to seconds, the base unit Prometheus expects for them. Sizes and rates keep their CloudWatch magnitude, since
+ * CloudWatch doesn't define whether its kilo is 1000 or 1024, and are suffixed accordingly. Counts and unitless
+ * metrics keep their name as is.
+ *
+ * Units written the same way, such as durations or counts and unitless metrics, share an {@link #identity()}, so the
+ * series of a metric reported in several of them are merged rather than written twice with the same labels.
+ */
+public enum CloudWatchUnit {
+    SECONDS("Seconds", "_seconds", "seconds", 1),
+    MILLISECONDS("Milliseconds", "_seconds", "seconds", 1e-3),
+    MICROSECONDS("Microseconds", "_seconds", "seconds", 1e-6),
+    BYTES("Bytes", "_bytes", "bytes", 1),
+    KILOBYTES("Kilobytes", "_kilobytes", "kilobytes", 1),
+    MEGABYTES("Megabytes", "_megabytes", "megabytes", 1),
+    GIGABYTES("Gigabytes", "_gigabytes", "gigabytes", 1),
+    TERABYTES("Terabytes", "_terabytes", "terabytes", 1),
+    BITS("Bits", "_bits", "bits", 1),
+    KILOBITS("Kilobits", "_kilobits", "kilobits", 1),
+    MEGABITS("Megabits", "_megabits", "megabits", 1),
+    GIGABITS("Gigabits", "_gigabits", "gigabits", 1),
+    TERABITS("Terabits", "_terabits", "terabits", 1),
+    PERCENT("Percent", "_percent", "percent", 1),
+    COUNT("Count", "", "", 1),
+    BYTES_PER_SECOND("Bytes/Second", "_bytes_per_second", "bytes/second", 1),
+    KILOBYTES_PER_SECOND("Kilobytes/Second", "_kilobytes_per_second", "kilobytes/second", 1),
+    MEGABYTES_PER_SECOND("Megabytes/Second", "_megabytes_per_second", "megabytes/second", 1),
+    GIGABYTES_PER_SECOND("Gigabytes/Second", "_gigabytes_per_second", "gigabytes/second", 1),
+    TERABYTES_PER_SECOND("Terabytes/Second", "_terabytes_per_second", "terabytes/second", 1),
+    BITS_PER_SECOND("Bits/Second", "_bits_per_second", "bits/second", 1),
+    KILOBITS_PER_SECOND("Kilobits/Second", "_kilobits_per_second", "kilobits/second", 1),
+    MEGABITS_PER_SECOND("Megabits/Second", "_megabits_per_second", "megabits/second", 1),
+    GIGABITS_PER_SECOND("Gigabits/Second", "_gigabits_per_second", "gigabits/second", 1),
+    TERABITS_PER_SECOND("Terabits/Second", "_terabits_per_second", "terabits/second", 1),
+    COUNT_PER_SECOND("Count/Second", "_per_second", "1/second", 1),
+    NONE("None", "", "", 1);
+
+    private static final Map<String, CloudWatchUnit> units = new HashMap<>();
+
+    static {
+        for (CloudWatchUnit unit : values()) {
+            units.put(unit.cloudWatchName, unit);
+            for (CloudWatchUnit other : values()) {
+                if (other.suffix.equals(unit.suffix) && other.prometheusUnit.equals(unit.prometheusUnit)) {
+                    unit.identity = other;
+                    break;
+                }
+            }
+        }
+    }
+
+    private final String cloudWatchName;
+    private final String suffix;
+    private final String prometheusUnit;
+    private final double scale;
+    private CloudWatchUnit identity;
+
+    CloudWatchUnit(String cloudWatchName, String suffix, String prometheusUnit, double scale) {
+        this.cloudWatchName = cloudWatchName;
+        this.suffix = suffix;
+        this.prometheusUnit = prometheusUnit;
+        this.scale = scale;
+    }
+
+    /**
+     * @param cloudWatchName The unit as it appears in the metric stream, may be null
+     * @return The matching unit, or {@link #NONE} for a missing or unknown unit
+     */
+    public static CloudWatchUnit of(String cloudWatchName) {
+        if (cloudWatchName == null) {
+            return NONE;
+        }
+        return units.getOrDefault(cloudWatchName, NONE);
+    }
+
+    /**
+     * @return The suffix appended to the metric name, before the suffix of the statistic
+     */
+    public String suffix() {
+        return suffix;
+    }
+
+    /**
+     * @return The first unit written to Prometheus like this one, which identifies the series of both
+     */
+    public CloudWatchUnit identity() {
+        return identity;
+    }
+
+    /**
+     * @return The unit reported in the metric metadata
+     */
+    public String prometheusUnit() {
+        return prometheusUnit;
+    }
+
+    /**
+     * Converts a value from this unit to the unit written to Prometheus.
+     */
+    public double scale(double value) {
+        return value * scale;
+    }
+}
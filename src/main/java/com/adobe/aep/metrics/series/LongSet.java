@@ -0,0 +1,91 @@
+package com.adobe.aep.metrics.series;
+
+import java.util.Arrays;
+
+/**
+ * A set of well spread longs, such as hashes and series fingerprints, kept in an open addressing table of primitive
+ * longs, so adding an element neither boxes nor allocates. The table is kept at most half full, and doubles when it
+ * fills up; the low bits of the elements pick their slot, so they must be mixed already.
+ *
+ * A set is not thread safe.
+ */
+public final class LongSet {
+
+    private static final long EMPTY = 0;
+
+    private long[] table;
+    private int size;
+
+    /**
+     * @param initialCapacity The number of elements the set holds before its table first grows
+     */
+    public LongSet(int initialCapacity) {
+        this.table = new long[Integer.highestOneBit(Math.max(initialCapacity, 4) * 2 - 1) << 1];
+    }
+
+    /**
+     * @return Whether the element was added, false if the set held it already
+     */
+    public boolean add(long element) {
+        long key = key(element);
+        int slot = slot(key);
+        if (table[slot] == key) {
+            return false;
+        }
+        table[slot] = key;
+        size++;
+        if (size * 2 > table.length) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(long element) {
+        long key = key(element);
+        return table[slot(key)] == key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every element, keeping the table at the size it has grown to.
+     */
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    private static long key(long element) {
+        // Zero marks an empty slot, so it stands in for an unlikely element of zero
+        return element == EMPTY ? 1 : element;
+    }
+
+    /**
+     * @return The slot holding the key, or the empty slot it would be inserted in
+     */
+    private int slot(long key) {
+        int mask = table.length - 1;
+        int slot = (int) key & mask;
+        while (table[slot] != EMPTY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        int mask = table.length - 1;
+        for (long key : old) {
+            if (key != EMPTY) {
+                int slot = (int) key & mask;
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = key;
+            }
+        }
+    }
+}
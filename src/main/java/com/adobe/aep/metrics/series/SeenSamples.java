@@ -0,0 +1,36 @@
+package com.adobe.aep.metrics.series;
+
+/**
+ * A set of the hashes of the items seen recently, to recognize exact duplicates. Hashes are kept in a {@link LongSet}
+ * which grows up to the configured bound; once it is full it is cleared, so memory stays bounded at the price of
+ * missing duplicates which arrive far apart.
+ */
+public final class SeenSamples {
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    private final int maxSize;
+    private final LongSet hashes = new LongSet(INITIAL_CAPACITY);
+
+    public SeenSamples(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param hash The hash of an item
+     * @return Whether the hash was new, false if the item is a duplicate
+     */
+    public boolean add(long hash) {
+        if (hashes.contains(hash)) {
+            return false;
+        }
+        if (hashes.size() >= maxSize) {
+            hashes.clear();
+        }
+        return hashes.add(hash);
+    }
+
+    public void clear() {
+        hashes.clear();
+    }
+}
@@ -0,0 +1,198 @@
+package com.adobe.aep.metrics.series;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The samples of a single series, identified by the account, namespace, metric name, unit and dimensions of the
+ * metric stream items it was built from. Each sample carries the min, max, sum and count statistics of a metric stream
+ * item, and samples are kept in primitive arrays, one per statistic, in the order they were added until
+ * {@link #sort()} orders them by timestamp.
+ *
+ * A series also tracks which of the records of its batch contributed samples to it, by their position in the batch,
+ * so a failure to deliver some of the series of a batch can be traced back to exactly the records affected.
+ */
+public final class Series {
+
+    private final long fingerprint;
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final CloudWatchUnit unit;
+    private final Map<String, String> dimensions;
+    private long[] timestamps;
+    private double[] mins;
+    private double[] maxs;
+    private double[] sums;
+    private double[] counts;
+    private int size;
+    private final BitSet records = new BitSet();
+
+    Series(long fingerprint, String accountId, String namespace, String metricName, CloudWatchUnit unit,
+           Map<String, String> dimensions, int capacity) {
+        this.fingerprint = fingerprint;
+        this.accountId = accountId;
+        this.namespace = namespace;
+        this.metricName = metricName;
+        this.unit = unit;
+        this.dimensions = dimensions;
+        this.timestamps = new long[capacity];
+        this.mins = new double[capacity];
+        this.maxs = new double[capacity];
+        this.sums = new double[capacity];
+        this.counts = new double[capacity];
+    }
+
+    public void add(long timestamp, double min, double max, double sum, double count) {
+        if (size == timestamps.length) {
+            int capacity = Math.max(4, size * 2);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        timestamps[size] = timestamp;
+        mins[size] = min;
+        maxs[size] = max;
+        sums[size] = sum;
+        counts[size] = count;
+        size++;
+    }
+
+    /**
+     * Merges the statistics into the sample with the given timestamp, if the series has one.
+     *
+     * @return Whether a sample was merged into, false if the series has no sample with that timestamp
+     */
+    public boolean merge(long timestamp, double min, double max, double sum, double count) {
+        // Items of a series mostly arrive in order, so the sample to merge into is usually the last one
+        for (int i = size - 1; i >= 0; i--) {
+            if (timestamps[i] == timestamp) {
+                mins[i] = Math.min(mins[i], min);
+                maxs[i] = Math.max(maxs[i], max);
+                sums[i] += sum;
+                counts[i] += count;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Orders the samples by timestamp, as remote_write endpoints reject samples older than the last one of a series.
+     */
+    public void sort() {
+        for (int i = 1; i < size; i++) {
+            if (timestamps[i] < timestamps[i - 1]) {
+                insertionSort();
+                return;
+            }
+        }
+    }
+
+    private void insertionSort() {
+        // Series hold a handful of samples, which are nearly sorted already
+        for (int i = 1; i < size; i++) {
+            long timestamp = timestamps[i];
+            double min = mins[i];
+            double max = maxs[i];
+            double sum = sums[i];
+            double count = counts[i];
+            int j = i - 1;
+            while (j >= 0 && timestamps[j] > timestamp) {
+                timestamps[j + 1] = timestamps[j];
+                mins[j + 1] = mins[j];
+                maxs[j + 1] = maxs[j];
+                sums[j + 1] = sums[j];
+                counts[j + 1] = counts[j];
+                j--;
+            }
+            timestamps[j + 1] = timestamp;
+            mins[j + 1] = min;
+            maxs[j + 1] = max;
+            sums[j + 1] = sum;
+            counts[j + 1] = count;
+        }
+    }
+
+    /**
+     * Marks the record at the given position in the batch as a source of samples of this series.
+     */
+    public void addRecord(int record) {
+        records.set(record);
+    }
+
+    /**
+     * @return The positions in the batch of the records which contributed samples to this series
+     */
+    public BitSet records() {
+        return records;
+    }
+
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    public String accountId() {
+        return accountId;
+    }
+
+    public String metricName() {
+        return metricName;
+    }
+
+    /**
+     * @return The dimensions of the series, may be null for items without dimensions
+     */
+    public Map<String, String> dimensions() {
+        return dimensions;
+    }
+
+    public String namespace() {
+        return namespace;
+    }
+
+    public CloudWatchUnit unit() {
+        return unit;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long timestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double min(int index) {
+        return mins[index];
+    }
+
+    public double max(int index) {
+        return maxs[index];
+    }
+
+    public double sum(int index) {
+        return sums[index];
+    }
+
+    public double count(int index) {
+        return counts[index];
+    }
+
+    boolean matches(String accountId, String namespace, String metricName, CloudWatchUnit unit,
+                    Map<String, String> dimensions) {
+        return Objects.equals(this.metricName, metricName)
+                && this.unit.identity() == unit.identity()
+                && Objects.equals(this.namespace, namespace)
+                && Objects.equals(this.accountId, accountId)
+                && Objects.equals(emptyIfNull(this.dimensions), emptyIfNull(dimensions));
+    }
+
+    private static Map<String, String> emptyIfNull(Map<String, String> dimensions) {
+        return dimensions == null ? Map.of() : dimensions;
+    }
+}
@@ -0,0 +1,159 @@
+package com.adobe.aep.metrics.series;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the samples of a batch into series in a single pass.
+ *
+ * Series are looked up by a 64 bit fingerprint of their account, namespace, metric name, unit and dimensions. The
+ * namespace and unit are part of the identity as they name the family the series is written to: the same metric name
+ * is common to many namespaces, and a metric reported in two units can't share the samples of a single series. The
+ * unit is compared by its {@link CloudWatchUnit#identity()} though, as units written the same way name the same
+ * family, and samples in milliseconds and seconds are both written in seconds. The fingerprint combines the
+ * dimensions independently of their order, so it matches sorting the dimensions first, without allocating anything
+ * for it. The table is open addressed on the fingerprint, and the identity of the series is only compared when
+ * fingerprints are equal, so hashing each dimension map is the only per sample cost.
+ *
+ * Series are returned in the order they were first seen, which keeps the encoded requests deterministic.
+ */
+public class SeriesIndex {
+
+    private static final int SAMPLES_PER_SERIES = 2;
+
+    private final List<Series> series;
+    private long[] fingerprints;
+    private Series[] slots;
+    private int mask;
+
+    /**
+     * @param expectedSeries The number of series to size the table for
+     */
+    public SeriesIndex(int expectedSeries) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSeries, 8) * 2 - 1) << 1;
+        this.series = new ArrayList<>(expectedSeries);
+        this.fingerprints = new long[capacity];
+        this.slots = new Series[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the series with the given identity, creating it if it doesn't exist yet.
+     *
+     * @param accountId The AWS account the metric originates from
+     * @param namespace The CloudWatch namespace of the metric
+     * @param metricName The name of the metric
+     * @param unit The unit of the metric
+     * @param dimensions The dimensions of the metric, may be null
+     * @return The series, to which samples can be added
+     */
+    public Series get(String accountId, String namespace, String metricName, CloudWatchUnit unit,
+                      Map<String, String> dimensions) {
+        long fingerprint = fingerprint(accountId, namespace, metricName, unit, dimensions);
+        int index = probe(fingerprint, accountId, namespace, metricName, unit, dimensions);
+        if (slots[index] != null) {
+            return slots[index];
+        }
+
+        Series created = new Series(fingerprint, accountId, namespace, metricName, unit, dimensions, SAMPLES_PER_SERIES);
+        fingerprints[index] = fingerprint;
+        slots[index] = created;
+        series.add(created);
+        // Keep the table at most half full so probe sequences stay short
+        if (series.size() * 2 > slots.length) {
+            resize();
+        }
+        return created;
+    }
+
+    /**
+     * Returns the series with the given identity, without creating it.
+     *
+     * @return The series, or null if there is no such series yet
+     */
+    public Series find(String accountId, String namespace, String metricName, CloudWatchUnit unit,
+                       Map<String, String> dimensions) {
+        long fingerprint = fingerprint(accountId, namespace, metricName, unit, dimensions);
+        return slots[probe(fingerprint, accountId, namespace, metricName, unit, dimensions)];
+    }
+
+    /**
+     * @return Every series in the order it was first seen
+     */
+    public List<Series> series() {
+        return series;
+    }
+
+    public int size() {
+        return series.size();
+    }
+
+    /**
+     * Computes the fingerprint of a series. Dimensions are combined by addition, which makes the fingerprint
+     * independent of the iteration order of the map.
+     */
+    public static long fingerprint(String accountId, String namespace, String metricName, CloudWatchUnit unit,
+                                   Map<String, String> dimensions) {
+        long hash = mix(((hash(accountId) * 31L + hash(namespace)) * 31 + hash(metricName)) * 31
+                + unit.identity().ordinal());
+        // Missing dimensions are combined like empty ones, as series compare them as equal
+        long combined = 0;
+        if (dimensions != null) {
+            for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+                combined += mix(((long) hash(dimension.getKey()) << 32) ^ hash(dimension.getValue()));
+            }
+        }
+        return mix(hash ^ combined);
+    }
+
+    /**
+     * @return The slot holding the series with the given identity, or the empty slot it would be inserted in
+     */
+    private int probe(long fingerprint, String accountId, String namespace, String metricName, CloudWatchUnit unit,
+                      Map<String, String> dimensions) {
+        int index = (int) fingerprint & mask;
+        Series slot;
+        while ((slot = slots[index]) != null) {
+            if (fingerprints[index] == fingerprint && slot.matches(accountId, namespace, metricName, unit, dimensions)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        long[] oldFingerprints = fingerprints;
+        Series[] oldSlots = slots;
+        fingerprints = new long[oldSlots.length * 2];
+        slots = new Series[oldSlots.length * 2];
+        mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != null) {
+                int index = (int) oldFingerprints[i] & mask;
+                while (slots[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                fingerprints[index] = oldFingerprints[i];
+                slots[index] = oldSlots[i];
+            }
+        }
+    }
+
+    private static int hash(String value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    /**
+     * The finalizer of MurmurHash3, spreading every input bit over the whole 64 bits.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
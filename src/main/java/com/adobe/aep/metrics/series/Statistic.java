@@ -0,0 +1,31 @@
+package com.adobe.aep.metrics.series;
+
+/**
+ * The statistics of a metric stream item, each of which is written as its own series, named after the metric with
+ * the suffix of the statistic.
+ */
+public enum Statistic {
+    SUM("_sum"),
+    COUNT("_count"),
+    MIN("_min"),
+    MAX("_max");
+
+    private final String suffix;
+
+    Statistic(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public String suffix() {
+        return suffix;
+    }
+
+    public double value(Series series, int index) {
+        return switch (this) {
+            case SUM -> series.sum(index);
+            case COUNT -> series.count(index);
+            case MIN -> series.min(index);
+            case MAX -> series.max(index);
+        };
+    }
+}
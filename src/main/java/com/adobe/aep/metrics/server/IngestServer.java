@@ -0,0 +1,252 @@
+package com.adobe.aep.metrics.server;
+
+import com.adobe.aep.metrics.CloudWatchMetricsAmpWriter;
+import com.adobe.aep.metrics.FirehoseEventProcessingResult;
+import com.amazonaws.services.lambda.runtime.events.KinesisFirehoseEvent;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Runs the writer as a long-lived HTTP server rather than as a Lambda function, so the connection pool, the name and
+ * metadata caches and the spill store stay warm across requests, and there are no cold starts. Every request is
+ * handled on its own virtual thread, by the same {@link CloudWatchMetricsAmpWriter#handleRequest} as in Lambda.
+ *
+ * Endpoints:
+ * - `POST /firehose` accepts the deliveries of a Firehose HTTP endpoint destination. A delivery is acknowledged once
+ *   every record in it is written, otherwise Firehose is told to retry it.
+ * - `POST /ndjson` accepts the newline delimited JSON of a metric stream as the body, e.g. from a load generator.
+ * - `GET /health` answers as long as the server is up.
+ *
+ * Bodies may be gzip compressed, as Firehose does when content encoding is enabled.
+ */
+public final class IngestServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestServer.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final String ACCESS_KEY_HEADER = "X-Amz-Firehose-Access-Key";
+    private static final String REQUEST_ID_HEADER = "X-Amz-Firehose-Request-Id";
+
+    private final CloudWatchMetricsAmpWriter writer;
+    private final ServerConfig config;
+    private final byte[] accessKey;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer server;
+
+    public IngestServer(CloudWatchMetricsAmpWriter writer, ServerConfig config) throws IOException {
+        this.writer = writer;
+        this.config = config;
+        this.accessKey = config.accessKey().getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(new InetSocketAddress(config.port()), 0);
+        server.setExecutor(executor);
+        server.createContext("/firehose", this::firehose);
+        server.createContext("/ndjson", this::ndjson);
+        server.createContext("/health", exchange -> respond(exchange, 200, "text/plain", "ok"));
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Listening on port {}", server.getAddress().getPort());
+    }
+
+    /**
+     * @return The port the server listens on, the actual one when configured with port 0
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, and waits for the requests in progress to complete for a while before interrupting
+     * them.
+     */
+    @Override
+    public void close() {
+        server.stop(config.stopDelaySeconds());
+        executor.shutdownNow();
+    }
+
+    private void firehose(HttpExchange exchange) throws IOException {
+        String requestId = exchange.getRequestHeaders().getFirst(REQUEST_ID_HEADER);
+        if (!checkMethod(exchange)) {
+            return;
+        }
+        if (!hasAccessKey(exchange)) {
+            respondToFirehose(exchange, 401, requestId, "Invalid access key");
+            return;
+        }
+        byte[] body = readBody(exchange);
+        if (body == null) {
+            respondToFirehose(exchange, 413, requestId, "Request larger than " + config.maxRequestBytes() + " bytes");
+            return;
+        }
+
+        FirehoseDelivery delivery;
+        List<KinesisFirehoseEvent.Record> records = new ArrayList<>();
+        try {
+            delivery = objectMapper.readValue(body, FirehoseDelivery.class);
+            if (requestId == null) {
+                requestId = delivery.requestId();
+            }
+            if (delivery.records() != null) {
+                for (FirehoseDelivery.Record record : delivery.records()) {
+                    if (record == null || record.data() == null) {
+                        throw new IllegalArgumentException("Record without data");
+                    }
+                    records.add(record(requestId + "-" + records.size(), Base64.getDecoder().decode(record.data())));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            respondToFirehose(exchange, 400, requestId, "Invalid delivery: " + e.getMessage());
+            return;
+        }
+        String failure = handle(requestId, records);
+        respondToFirehose(exchange, failure == null ? 200 : 500, requestId, failure);
+    }
+
+    /**
+     * Compares the access key of a delivery in constant time, so how long a key takes to be rejected tells nothing
+     * about how much of it is right. A delivery without the header is rejected like a wrong key.
+     *
+     * @return Whether the delivery carries the configured access key, or true if none is configured
+     */
+    private boolean hasAccessKey(HttpExchange exchange) {
+        if (accessKey.length == 0) {
+            return true;
+        }
+        String provided = exchange.getRequestHeaders().getFirst(ACCESS_KEY_HEADER);
+        return provided != null && MessageDigest.isEqual(accessKey, provided.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void ndjson(HttpExchange exchange) throws IOException {
+        if (!checkMethod(exchange)) {
+            return;
+        }
+        byte[] body = readBody(exchange);
+        if (body == null) {
+            respond(exchange, 413, "text/plain", "Request larger than " + config.maxRequestBytes() + " bytes");
+            return;
+        }
+        String requestId = UUID.randomUUID().toString();
+        String failure = handle(requestId, List.of(record(requestId, body)));
+        respond(exchange, failure == null ? 200 : 500, "text/plain", failure == null ? "" : failure);
+    }
+
+    /**
+     * Runs the records through the handler.
+     *
+     * @return The reason the first failed record failed, or null if every record was written
+     */
+    private String handle(String requestId, List<KinesisFirehoseEvent.Record> records) {
+        KinesisFirehoseEvent event = new KinesisFirehoseEvent();
+        event.setInvocationId(requestId);
+        event.setRecords(records);
+        FirehoseEventProcessingResult result;
+        try {
+            result = writer.handleRequest(event,
+                    new ServerContext(requestId, System.currentTimeMillis() + config.requestTimeoutMillis()));
+        } catch (RuntimeException e) {
+            logger.error("Error handling request {}", requestId, e);
+            return "Error handling the request: " + e.getMessage();
+        }
+        for (FirehoseEventProcessingResult.Record record : result.getRecords()) {
+            if (record.getResult() == FirehoseEventProcessingResult.Result.ProcessingFailed) {
+                // The data of a failed record carries the error message
+                return new String(Base64.getDecoder().decode(record.getData()), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static KinesisFirehoseEvent.Record record(String recordId, byte[] data) {
+        KinesisFirehoseEvent.Record record = new KinesisFirehoseEvent.Record();
+        record.setRecordId(recordId);
+        record.setData(ByteBuffer.wrap(data));
+        return record;
+    }
+
+    private static boolean checkMethod(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            respond(exchange, 405, "text/plain", "Only POST is supported");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The body, decompressed, or null if it is larger than the limit
+     */
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        InputStream input = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            input = new GZIPInputStream(input);
+        }
+        try (InputStream body = input) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = body.read(chunk)) != -1) {
+                if (buffer.size() + read > config.maxRequestBytes()) {
+                    return null;
+                }
+                buffer.write(chunk, 0, read);
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    /**
+     * Responds in the format Firehose expects from an HTTP endpoint, any status other than 200 makes it retry.
+     */
+    private static void respondToFirehose(HttpExchange exchange, int status, String requestId, String errorMessage)
+            throws IOException {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("requestId", requestId);
+        response.put("timestamp", System.currentTimeMillis());
+        if (errorMessage != null) {
+            response.put("errorMessage", errorMessage);
+        }
+        respond(exchange, status, "application/json", objectMapper.writeValueAsString(response));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * The body of a Firehose HTTP endpoint delivery.
+     */
+    record FirehoseDelivery(String requestId, long timestamp, List<Record> records) {
+        record Record(String data) {
+        }
+    }
+}
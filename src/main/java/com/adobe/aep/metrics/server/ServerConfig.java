@@ -0,0 +1,36 @@
+package com.adobe.aep.metrics.server;
+
+import com.adobe.aep.metrics.Environment;
+
+/**
+ * Settings of the standalone {@link IngestServer}.
+ *
+ * @param port The port to listen on
+ * @param maxRequestBytes The largest request body accepted, after decompression
+ * @param requestTimeoutMillis The time a request may take, the counterpart of the Lambda timeout
+ * @param accessKey The access key Firehose must present in `X-Amz-Firehose-Access-Key`, or empty to accept any
+ * @param stopDelaySeconds The time given to the requests in progress to complete when the server stops. The server
+ *                         waits for all of it on Java 21, even when no request is in progress
+ */
+public record ServerConfig(
+        int port,
+        int maxRequestBytes,
+        long requestTimeoutMillis,
+        String accessKey,
+        int stopDelaySeconds
+) {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_REQUEST_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 180_000;
+    public static final int DEFAULT_STOP_DELAY_SECONDS = 30;
+
+    public static ServerConfig fromEnvironment() {
+        return new ServerConfig(
+                Environment.getInt("SERVER_PORT", DEFAULT_PORT),
+                Environment.getInt("SERVER_MAX_REQUEST_BYTES", DEFAULT_MAX_REQUEST_BYTES),
+                Environment.getLong("SERVER_REQUEST_TIMEOUT_MS", DEFAULT_REQUEST_TIMEOUT_MILLIS),
+                Environment.get("FIREHOSE_ACCESS_KEY", ""),
+                Environment.getInt("SERVER_STOP_DELAY_SECONDS", DEFAULT_STOP_DELAY_SECONDS)
+        );
+    }
+}
@@ -0,0 +1,93 @@
+package com.adobe.aep.metrics.server;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Lambda context of a request handled by the {@link IngestServer}, so the handler runs unchanged. The remaining
+ * time counts down to the request timeout, and the Lambda logger writes to the server log.
+ */
+final class ServerContext implements Context {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerContext.class);
+    private static final LambdaLogger LAMBDA_LOGGER = new LambdaLogger() {
+        @Override
+        public void log(String message) {
+            logger.info(message);
+        }
+
+        @Override
+        public void log(byte[] message) {
+            logger.info(new String(message, StandardCharsets.UTF_8));
+        }
+    };
+
+    private final String requestId;
+    private final long deadlineMillis;
+
+    ServerContext(String requestId, long deadlineMillis) {
+        this.requestId = requestId;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    @Override
+    public String getAwsRequestId() {
+        return requestId;
+    }
+
+    @Override
+    public String getLogGroupName() {
+        return null;
+    }
+
+    @Override
+    public String getLogStreamName() {
+        return null;
+    }
+
+    @Override
+    public String getFunctionName() {
+        return null;
+    }
+
+    @Override
+    public String getFunctionVersion() {
+        return null;
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+        return null;
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+        return (int) Math.max(0, deadlineMillis - System.currentTimeMillis());
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+        return (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+        return LAMBDA_LOGGER;
+    }
+}
@@ -0,0 +1,49 @@
+package com.adobe.aep.metrics.spill;
+
+import com.adobe.aep.metrics.Environment;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the {@link SpillStore} undeliverable requests are written to.
+ *
+ * @param directory The directory holding the segment files, on the local disk of the Lambda sandbox
+ * @param maxBytes The maximum size of all segments together, the oldest segment is evicted beyond it, or zero to
+ *                 disable spilling
+ * @param segmentBytes The size of a segment file, which is also the largest request which can be spilled. Clamped to
+ *                     `maxBytes`, as the store always holds the segment being written
+ * @param maxAgeMillis How long a spilled request is replayed, older ones hold samples the endpoint would reject
+ */
+public record SpillConfig(
+        Path directory,
+        long maxBytes,
+        int segmentBytes,
+        long maxAgeMillis
+) {
+    public static final String DEFAULT_DIRECTORY = "/tmp/remote-write-spill";
+    public static final int DEFAULT_SEGMENT_BYTES = 4 * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MILLIS = 60 * 60 * 1000;
+
+    public SpillConfig {
+        if (maxBytes > 0 && segmentBytes > maxBytes) {
+            segmentBytes = (int) maxBytes;
+        }
+    }
+
+    public static SpillConfig disabled() {
+        return new SpillConfig(Path.of(DEFAULT_DIRECTORY), 0, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    public static SpillConfig fromEnvironment() {
+        return new SpillConfig(
+                Path.of(Environment.get("SPILL_DIRECTORY", DEFAULT_DIRECTORY)),
+                Environment.getLong("SPILL_MAX_BYTES", 0),
+                Environment.getInt("SPILL_SEGMENT_BYTES", DEFAULT_SEGMENT_BYTES),
+                Environment.getLong("SPILL_MAX_AGE_SECONDS", DEFAULT_MAX_AGE_MILLIS / 1000) * 1000
+        );
+    }
+
+    public boolean enabled() {
+        return maxBytes > 0;
+    }
+}
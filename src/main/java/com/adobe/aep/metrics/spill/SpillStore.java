@@ -0,0 +1,304 @@
+package com.adobe.aep.metrics.spill;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * A write-ahead store for compressed remote_write requests which could not be delivered, so a later invocation can
+ * replay them as they are, rather than Firehose sending the records again to be parsed and encoded once more.
+ *
+ * Requests are appended to memory-mapped segment files of a fixed size, a new segment is started when a request
+ * doesn't fit in the current one anymore. Each entry is laid out as:
+ * - The length of the request, written last, so an append torn by a crash reads as the end of the segment
+ * - The state of the entry, pending or delivered
+ * - The time it was spilled, in epoch milliseconds
+ * - The CRC32C of the request
+ * - The request itself
+ *
+ * A segment is deleted once every entry in it is delivered or expired. When the segments would take more than the
+ * configured size, the oldest segment is evicted with whatever it still holds. Segments left by an earlier process
+ * are recovered when the store is opened, and replayed like the others. Nothing is forced to disk: the store is meant
+ * to outlive an invocation, not the sandbox.
+ *
+ * Requests are appended by the sending threads and replayed by another one, so every method is synchronized.
+ */
+public final class SpillStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillStore.class);
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".spill";
+    private static final int HEADER_BYTES = 20;
+    private static final int PENDING = 1;
+    private static final int DELIVERED = 2;
+
+    private final SpillConfig config;
+    private final Clock clock;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long nextSequence;
+    private int pending;
+
+    private SpillStore(SpillConfig config, Clock clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    /**
+     * Opens the store in the configured directory, recovering the entries of the segments found there.
+     */
+    public static SpillStore open(SpillConfig config, Clock clock) throws IOException {
+        Files.createDirectories(config.directory());
+        SpillStore store = new SpillStore(config, clock);
+        store.recover();
+        return store;
+    }
+
+    /**
+     * Appends a request, without moving the position of the buffer.
+     *
+     * @param payload The compressed request, exactly as it would be posted
+     * @return Whether the request was spilled, false if it is larger than a segment or the segment couldn't be created
+     */
+    public synchronized boolean append(ByteBuffer payload) {
+        int length = payload.remaining();
+        if (HEADER_BYTES + length > config.segmentBytes()) {
+            return false;
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || !segment.writable || segment.position + HEADER_BYTES + length > segment.buffer.capacity()) {
+            try {
+                segment = roll();
+            } catch (IOException e) {
+                logger.warn("Error creating a spill segment in {}: {}", config.directory(), e.getMessage());
+                return false;
+            }
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = segment.position;
+        buffer.put(offset + HEADER_BYTES, payload, payload.position(), length);
+        buffer.putInt(offset + 4, PENDING);
+        buffer.putLong(offset + 8, clock.millis());
+        buffer.putInt(offset + 16, (int) crc.getValue());
+        buffer.putInt(offset, length);
+
+        segment.offsets.add(offset);
+        segment.position = offset + HEADER_BYTES + length;
+        segment.pending++;
+        pending++;
+        return true;
+    }
+
+    /**
+     * @return Whether any request is waiting to be replayed
+     */
+    public synchronized boolean hasPending() {
+        return pending > 0;
+    }
+
+    /**
+     * Lists the requests waiting to be replayed, oldest first. Requests older than the maximum age are dropped.
+     */
+    public synchronized List<Entry> pending() {
+        long expiry = clock.millis() - config.maxAgeMillis();
+        List<Entry> entries = new ArrayList<>(pending);
+        int expired = 0;
+        for (Segment segment : new ArrayList<>(segments)) {
+            for (int offset : segment.offsets) {
+                if (segment.buffer.getInt(offset + 4) != PENDING) {
+                    continue;
+                }
+                long spilledAt = segment.buffer.getLong(offset + 8);
+                if (spilledAt < expiry) {
+                    markDelivered(segment, offset);
+                    expired++;
+                } else {
+                    ByteBuffer body = segment.buffer.slice(offset + HEADER_BYTES, segment.buffer.getInt(offset))
+                            .asReadOnlyBuffer();
+                    entries.add(new Entry(segment, offset, spilledAt, body));
+                }
+            }
+        }
+        if (expired > 0) {
+            logger.warn("Dropped {} spilled requests older than {} ms", expired, config.maxAgeMillis());
+        }
+        return entries;
+    }
+
+    /**
+     * Removes a request once it has been replayed, or rejected for good.
+     */
+    public synchronized void remove(Entry entry) {
+        // The segment may have been evicted since the entry was listed
+        if (segments.contains(entry.segment) && entry.segment.buffer.getInt(entry.offset + 4) == PENDING) {
+            markDelivered(entry.segment, entry.offset);
+        }
+    }
+
+    private void markDelivered(Segment segment, int offset) {
+        segment.buffer.putInt(offset + 4, DELIVERED);
+        segment.pending--;
+        pending--;
+        if (segment.pending == 0 && !segment.writable) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * Starts a new segment, evicting the oldest ones to make room for it.
+     */
+    private Segment roll() throws IOException {
+        Segment current = segments.peekLast();
+        if (current != null) {
+            current.writable = false;
+            if (current.pending == 0) {
+                delete(current);
+            }
+        }
+        while (!segments.isEmpty() && (long) (segments.size() + 1) * config.segmentBytes() > config.maxBytes()) {
+            Segment oldest = segments.peekFirst();
+            logger.warn("Evicting spill segment {} with {} undelivered requests", oldest.path.getFileName(), oldest.pending);
+            pending -= oldest.pending;
+            delete(oldest);
+        }
+
+        Path path = config.directory().resolve(PREFIX + nextSequence++ + SUFFIX);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file, with zeros which read as the end of the segment
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, config.segmentBytes());
+        }
+        Segment segment = new Segment(path, buffer);
+        segment.writable = true;
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment);
+        // The mapping itself is only released once the buffer is garbage collected
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            logger.warn("Error deleting spill segment {}: {}", segment.path, e.getMessage());
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(config.directory(), PREFIX + "*" + SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        paths.sort((a, b) -> Long.compare(sequence(a), sequence(b)));
+        for (Path path : paths) {
+            nextSequence = Math.max(nextSequence, sequence(path) + 1);
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            }
+            // Recovered segments are only read, requests are appended to a new one
+            Segment segment = new Segment(path, buffer);
+            segments.addLast(segment);
+            scan(segment);
+            if (segment.pending == 0) {
+                delete(segment);
+            } else {
+                pending += segment.pending;
+            }
+        }
+        if (pending > 0) {
+            logger.info("Recovered {} spilled requests from {}", pending, config.directory());
+        }
+    }
+
+    private static void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(offset + HEADER_BYTES, length));
+            if ((int) crc.getValue() != buffer.getInt(offset + 16)) {
+                logger.warn("Corrupt entry at {} in spill segment {}, skipping the rest of it", offset, segment.path);
+                break;
+            }
+            segment.offsets.add(offset);
+            if (buffer.getInt(offset + 4) == PENDING) {
+                segment.pending++;
+            }
+            offset += HEADER_BYTES + length;
+        }
+        segment.position = offset;
+    }
+
+    private static long sequence(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A spilled request waiting to be replayed.
+     */
+    public static final class Entry {
+        private final Segment segment;
+        private final int offset;
+        private final long spilledAtMillis;
+        private final ByteBuffer body;
+
+        private Entry(Segment segment, int offset, long spilledAtMillis, ByteBuffer body) {
+            this.segment = segment;
+            this.offset = offset;
+            this.spilledAtMillis = spilledAtMillis;
+            this.body = body;
+        }
+
+        public long spilledAtMillis() {
+            return spilledAtMillis;
+        }
+
+        /**
+         * @return The compressed request, a read-only view of the segment
+         */
+        public ByteBuffer body() {
+            return body.duplicate();
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final List<Integer> offsets = new ArrayList<>();
+        private int position;
+        private int pending;
+        private boolean writable;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
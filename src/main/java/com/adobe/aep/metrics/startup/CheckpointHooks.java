@@ -0,0 +1,67 @@
+package com.adobe.aep.metrics.startup;
+
+import com.adobe.aep.metrics.credentials.RefreshingCredentialsProvider;
+import com.adobe.aep.metrics.transport.RemoteWriteTransport;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs hooks around a checkpoint of the JVM, as taken by Lambda SnapStart or by a CRaC enabled JDK, through the
+ * `org.crac` API. The API does nothing on a JVM which can't be checkpointed, so the hooks are always registered and
+ * only ever run where a snapshot is taken.
+ *
+ * The hooks hold the parts of the writer they act on rather than the writer itself, so registering them doesn't let
+ * the writer escape its constructor.
+ */
+public final class CheckpointHooks implements Resource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointHooks.class);
+
+    private final Primer primer;
+    private final RemoteWriteTransport transport;
+    private final RefreshingCredentialsProvider credentialsProvider;
+
+    private CheckpointHooks(Primer primer, RemoteWriteTransport transport,
+                            RefreshingCredentialsProvider credentialsProvider) {
+        this.primer = primer;
+        this.transport = transport;
+        this.credentialsProvider = credentialsProvider;
+    }
+
+    /**
+     * Registers the hooks with the global checkpoint context.
+     *
+     * @param primer Run before the checkpoint is taken, so a restored handler starts with its classes loaded
+     * @param transport Has its idle connections closed before the checkpoint is taken
+     * @param credentialsProvider Has its credentials invalidated once the JVM is restored
+     * @return The hooks, which must be referenced for as long as they should run since the context only holds them
+     *         weakly
+     */
+    public static CheckpointHooks register(Primer primer, RemoteWriteTransport transport,
+                                           RefreshingCredentialsProvider credentialsProvider) {
+        CheckpointHooks hooks = new CheckpointHooks(primer, transport, credentialsProvider);
+        try {
+            Core.getGlobalContext().register(hooks);
+            logger.debug("Registered checkpoint hooks");
+        } catch (RuntimeException e) {
+            logger.warn("Error registering checkpoint hooks: {}", e.toString());
+        }
+        return hooks;
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        primer.prime();
+        // Open connections wouldn't survive the restore
+        transport.closeIdleConnections();
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        // Credentials resolved before the checkpoint may have expired by the time a snapshot is restored
+        credentialsProvider.invalidate();
+    }
+}
@@ -0,0 +1,93 @@
+package com.adobe.aep.metrics.startup;
+
+import com.adobe.aep.metrics.AwsV4Signer;
+import com.adobe.aep.metrics.credentials.RefreshingCredentialsProvider;
+import com.adobe.aep.metrics.dispatch.BatchLimits;
+import com.adobe.aep.metrics.dispatch.MetricBatch;
+import com.adobe.aep.metrics.dispatch.MetricBatcher;
+import com.adobe.aep.metrics.encode.EncodedPayload;
+import com.adobe.aep.metrics.encode.WriteRequestEncoder;
+import com.adobe.aep.metrics.parse.MetricStreamParser;
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.adobe.aep.metrics.relabel.Relabeler;
+import com.adobe.aep.metrics.relabel.SeriesLimiter;
+import com.adobe.aep.metrics.series.AggregationWindow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Runs a single synthetic item through parsing, batching, encoding, compression and signing without sending it, and
+ * resolves the credentials, so the classes of the send path are loaded and initialized before the first invocation
+ * needs them. The primer shares the parser, encoder and signer of the writer, so whatever they cache is warm too.
+ */
+public final class Primer {
+
+    private static final Logger logger = LoggerFactory.getLogger(Primer.class);
+
+    // A single metric stream item, run through the send path when priming the handler
+    private static final byte[] PRIMING_RECORD = ("{\"metric_stream_name\":\"priming\",\"account_id\":\"000000000000\","
+            + "\"region\":\"us-east-1\",\"namespace\":\"AWS/DynamoDB\",\"metric_name\":\"ConsumedReadCapacityUnits\","
+            + "\"dimensions\":{\"TableName\":\"priming\"},\"timestamp\":0,"
+            + "\"value\":{\"max\":1.0,\"min\":1.0,\"sum\":1.0,\"count\":1.0},\"unit\":\"Count\"}\n")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final AwsCredentials PRIMING_CREDENTIALS = AwsBasicCredentials.create("priming", "priming");
+
+    private final MetricStreamParser parser;
+    private final WriteRequestEncoder encoder;
+    private final BatchLimits batchLimits;
+    private final AggregationWindow aggregationWindow;
+    private final Relabeler relabeler;
+    private final int maxSeriesPerFamily;
+    private final AwsV4Signer signer;
+    private final RefreshingCredentialsProvider credentialsProvider;
+
+    public Primer(MetricStreamParser parser, WriteRequestEncoder encoder, BatchLimits batchLimits,
+                  AggregationWindow aggregationWindow, Relabeler relabeler, int maxSeriesPerFamily,
+                  AwsV4Signer signer, RefreshingCredentialsProvider credentialsProvider) {
+        this.parser = parser;
+        this.encoder = encoder;
+        this.batchLimits = batchLimits;
+        this.aggregationWindow = aggregationWindow;
+        this.relabeler = relabeler;
+        this.maxSeriesPerFamily = maxSeriesPerFamily;
+        this.signer = signer;
+        this.credentialsProvider = credentialsProvider;
+    }
+
+    /**
+     * Primes the send path. Errors are logged rather than thrown, as priming only saves time.
+     */
+    public void prime() {
+        long start = System.nanoTime();
+        MetricBatcher batcher = new MetricBatcher(encoder, batchLimits, aggregationWindow, relabeler,
+                new SeriesLimiter(maxSeriesPerFamily));
+        try (MetricStreamParser.Reader reader = parser.open(ByteBuffer.wrap(PRIMING_RECORD))) {
+            CloudWatchStreamMetric metric;
+            while ((metric = reader.next()) != null) {
+                batcher.add(metric, "priming");
+            }
+            MetricBatch batch = batcher.flush();
+            if (batch != null) {
+                try (EncodedPayload payload = encoder.encode(batch.series())) {
+                    signer.sign(PRIMING_CREDENTIALS, Instant.now(), payload.body());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The first invocation does the same work otherwise
+            logger.warn("Error priming the handler: {}", e.getMessage());
+        }
+        try {
+            credentialsProvider.resolveCredentials();
+        } catch (RuntimeException e) {
+            logger.warn("Error resolving credentials while priming the handler: {}", e.getMessage());
+        }
+        logger.info("Primed the handler in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,156 @@
+package com.adobe.aep.metrics.telemetry;
+
+import com.adobe.aep.metrics.Environment;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Emits the metrics of an invocation as a single line in CloudWatch Embedded Metric Format. Lambda ships standard
+ * output to CloudWatch Logs, which extracts the metrics from the line, so publishing costs no API call.
+ *
+ * The HTTP latency histogram is written as the values and counts of a single metric, with the upper bound of every
+ * bucket as its value. Responses are counted per status code as `Status<code>` metrics.
+ *
+ * @see <a href="https://docs.aws.amazon.com/AmazonCloudWatch/latest/monitoring/CloudWatch_Embedded_Metric_Format_Specification.html">Embedded Metric Format</a>
+ */
+public class EmfMetricsSink implements MetricsSink {
+
+    public static final String DEFAULT_NAMESPACE = "CloudWatchMetricsAmpWriter";
+    private static final String DIMENSION = "FunctionName";
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final String namespace;
+    private final String functionName;
+    private final Consumer<String> output;
+
+    /**
+     * @param namespace The CloudWatch namespace the metrics are published in
+     * @param functionName The value of the `FunctionName` dimension
+     * @param output Where the lines are written
+     */
+    public EmfMetricsSink(String namespace, String functionName, Consumer<String> output) {
+        this.namespace = namespace;
+        this.functionName = functionName;
+        this.output = output;
+    }
+
+    public static EmfMetricsSink fromEnvironment() {
+        return new EmfMetricsSink(Environment.get("METRICS_NAMESPACE", DEFAULT_NAMESPACE),
+                Environment.get("AWS_LAMBDA_FUNCTION_NAME", "local"), System.out::println);
+    }
+
+    @Override
+    public void emit(InvocationMetrics metrics) {
+        output.accept(format(metrics));
+    }
+
+    /**
+     * @return The metrics as a single EMF JSON line
+     */
+    public String format(InvocationMetrics metrics) {
+        StringWriter line = new StringWriter(1024);
+        try (JsonGenerator json = jsonFactory.createGenerator(line)) {
+            Map<Integer, Long> statusCodes = metrics.statusCodes();
+            Map<Long, Long> latencies = metrics.latencyHistogram();
+
+            json.writeStartObject();
+            json.writeObjectFieldStart("_aws");
+            json.writeNumberField("Timestamp", System.currentTimeMillis());
+            json.writeArrayFieldStart("CloudWatchMetrics");
+            json.writeStartObject();
+            json.writeStringField("Namespace", namespace);
+            json.writeArrayFieldStart("Dimensions");
+            json.writeStartArray();
+            json.writeString(DIMENSION);
+            json.writeEndArray();
+            json.writeEndArray();
+            json.writeArrayFieldStart("Metrics");
+            definition(json, "Duration", "Milliseconds");
+            definition(json, "Records", "Count");
+            definition(json, "Metrics", "Count");
+            definition(json, "ParseTime", "Milliseconds");
+            definition(json, "Batches", "Count");
+            definition(json, "Series", "Count");
+            definition(json, "Samples", "Count");
+            definition(json, "CollapsedSamples", "Count");
+            definition(json, "LimitedSamples", "Count");
+            definition(json, "EncodeTime", "Milliseconds");
+            definition(json, "EncodedBytes", "Bytes");
+            definition(json, "CompressedBytes", "Bytes");
+            definition(json, "SignTime", "Milliseconds");
+            definition(json, "Requests", "Count");
+            definition(json, "Retries", "Count");
+            definition(json, "TransportErrors", "Count");
+            definition(json, "SpilledBatches", "Count");
+            definition(json, "ReplayedBatches", "Count");
+            if (!latencies.isEmpty()) {
+                definition(json, "HttpLatency", "Milliseconds");
+            }
+            for (Integer statusCode : statusCodes.keySet()) {
+                definition(json, "Status" + statusCode, "Count");
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+
+            json.writeStringField(DIMENSION, functionName);
+            json.writeNumberField("Duration", millis(metrics.durationNanos()));
+            json.writeNumberField("Records", metrics.records());
+            json.writeNumberField("Metrics", metrics.items());
+            json.writeNumberField("ParseTime", millis(metrics.parseNanos()));
+            json.writeNumberField("Batches", metrics.batches());
+            json.writeNumberField("Series", metrics.series());
+            json.writeNumberField("Samples", metrics.samples());
+            json.writeNumberField("CollapsedSamples", metrics.collapsedSamples());
+            json.writeNumberField("LimitedSamples", metrics.limitedSamples());
+            json.writeNumberField("EncodeTime", millis(metrics.encodeNanos()));
+            json.writeNumberField("EncodedBytes", metrics.encodedBytes());
+            json.writeNumberField("CompressedBytes", metrics.compressedBytes());
+            json.writeNumberField("SignTime", millis(metrics.signNanos()));
+            json.writeNumberField("Requests", metrics.requests());
+            json.writeNumberField("Retries", metrics.retries());
+            json.writeNumberField("TransportErrors", metrics.transportErrors());
+            json.writeNumberField("SpilledBatches", metrics.spilledBatches());
+            json.writeNumberField("ReplayedBatches", metrics.replayedBatches());
+            if (!latencies.isEmpty()) {
+                json.writeObjectFieldStart("HttpLatency");
+                json.writeArrayFieldStart("Values");
+                for (Long bound : latencies.keySet()) {
+                    json.writeNumber(bound);
+                }
+                json.writeEndArray();
+                json.writeArrayFieldStart("Counts");
+                for (Long count : latencies.values()) {
+                    json.writeNumber(count);
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            for (Map.Entry<Integer, Long> statusCode : statusCodes.entrySet()) {
+                json.writeNumberField("Status" + statusCode.getKey(), statusCode.getValue());
+            }
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return line.toString();
+    }
+
+    private static void definition(JsonGenerator json, String name, String unit) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("Name", name);
+        json.writeStringField("Unit", unit);
+        json.writeEndObject();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,243 @@
+package com.adobe.aep.metrics.telemetry;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a single invocation of the handler did and where it spent its time. Batches are sent from several threads at
+ * once, so every counter is a `LongAdder`, which keeps recording down to an uncontended add on the hot path.
+ *
+ * Times are accumulated in nanoseconds across all the batches, so with several batches in flight the encode, sign and
+ * HTTP times can add up to more than the duration of the invocation.
+ */
+public class InvocationMetrics {
+
+    /**
+     * Upper bounds of the buckets of the HTTP latency histogram, the last bucket is unbounded.
+     */
+    private static final long[] LATENCY_BOUNDS_MILLIS = {5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000};
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder series = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder collapsedSamples = new LongAdder();
+    private final LongAdder limitedSamples = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder signNanos = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder transportErrors = new LongAdder();
+    private final LongAdder spilledBatches = new LongAdder();
+    private final LongAdder replayedBatches = new LongAdder();
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BOUNDS_MILLIS.length + 1);
+    private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+
+    /**
+     * Records a Firehose record which has been parsed.
+     *
+     * @param items The number of metric stream items in the record
+     * @param nanos The time spent parsing and aggregating the items
+     */
+    public void recordParsed(int items, long nanos) {
+        this.records.increment();
+        this.items.add(items);
+        this.parseNanos.add(nanos);
+    }
+
+    /**
+     * Records a batch handed over for sending.
+     */
+    public void batchDispatched(int series, int samples) {
+        this.batches.increment();
+        this.series.add(series);
+        this.samples.add(samples);
+    }
+
+    /**
+     * Records the items which were dropped as duplicates or merged into another sample by the pre-aggregation.
+     */
+    public void samplesCollapsed(long samples) {
+        this.collapsedSamples.add(samples);
+    }
+
+    /**
+     * Records the items which were dropped as their series were past the limit of their metric family.
+     */
+    public void samplesLimited(long samples) {
+        this.limitedSamples.add(samples);
+    }
+
+    /**
+     * Records the encoding of a request.
+     *
+     * @param encodedBytes The size of the serialized request
+     * @param compressedBytes The size of the request once compressed
+     * @param nanos The time spent encoding and compressing
+     */
+    public void requestEncoded(int encodedBytes, int compressedBytes, long nanos) {
+        this.encodedBytes.add(encodedBytes);
+        this.compressedBytes.add(compressedBytes);
+        this.encodeNanos.add(nanos);
+    }
+
+    public void requestSigned(long nanos) {
+        this.signNanos.add(nanos);
+    }
+
+    /**
+     * Records a response of the remote_write endpoint.
+     *
+     * @param statusCode The status of the response
+     * @param nanos The time from sending the request to receiving the response
+     */
+    public void responseReceived(int statusCode, long nanos) {
+        statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+        requestCompleted(nanos);
+    }
+
+    /**
+     * Records a request which failed without a response.
+     *
+     * @param nanos The time until the request failed
+     */
+    public void requestFailed(long nanos) {
+        transportErrors.increment();
+        requestCompleted(nanos);
+    }
+
+    public void retried(int retries) {
+        this.retries.add(retries);
+    }
+
+    /**
+     * Records a request written to the spill store after its delivery failed.
+     */
+    public void batchSpilled() {
+        this.spilledBatches.increment();
+    }
+
+    /**
+     * Records a spilled request delivered by a later invocation.
+     */
+    public void batchReplayed() {
+        this.replayedBatches.increment();
+    }
+
+    private void requestCompleted(long nanos) {
+        requests.increment();
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < LATENCY_BOUNDS_MILLIS.length && millis > LATENCY_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        latencyBuckets.incrementAndGet(bucket);
+    }
+
+    public long durationNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public long records() {
+        return records.sum();
+    }
+
+    public long items() {
+        return items.sum();
+    }
+
+    public long parseNanos() {
+        return parseNanos.sum();
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    public long series() {
+        return series.sum();
+    }
+
+    public long samples() {
+        return samples.sum();
+    }
+
+    public long collapsedSamples() {
+        return collapsedSamples.sum();
+    }
+
+    public long limitedSamples() {
+        return limitedSamples.sum();
+    }
+
+    public long encodeNanos() {
+        return encodeNanos.sum();
+    }
+
+    public long encodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    public long compressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    public long signNanos() {
+        return signNanos.sum();
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long retries() {
+        return retries.sum();
+    }
+
+    public long spilledBatches() {
+        return spilledBatches.sum();
+    }
+
+    public long replayedBatches() {
+        return replayedBatches.sum();
+    }
+
+    public long transportErrors() {
+        return transportErrors.sum();
+    }
+
+    /**
+     * @return The number of responses per status code, sorted by status code
+     */
+    public Map<Integer, Long> statusCodes() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        statusCodes.forEach((code, count) -> counts.put(code, count.sum()));
+        return counts;
+    }
+
+    /**
+     * @return The number of requests per latency bucket, keyed by the upper bound of the bucket in milliseconds. The
+     *         unbounded last bucket is keyed by twice the last bound, empty buckets are left out.
+     */
+    public Map<Long, Long> latencyHistogram() {
+        Map<Long, Long> histogram = new TreeMap<>();
+        for (int i = 0; i < latencyBuckets.length(); i++) {
+            long count = latencyBuckets.get(i);
+            if (count > 0) {
+                histogram.put(i < LATENCY_BOUNDS_MILLIS.length
+                        ? LATENCY_BOUNDS_MILLIS[i]
+                        : 2 * LATENCY_BOUNDS_MILLIS[LATENCY_BOUNDS_MILLIS.length - 1], count);
+            }
+        }
+        return histogram;
+    }
+}
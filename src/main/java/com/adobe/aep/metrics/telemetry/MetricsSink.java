@@ -0,0 +1,39 @@
+package com.adobe.aep.metrics.telemetry;
+
+import com.adobe.aep.metrics.Environment;
+
+/**
+ * Where the {@link InvocationMetrics} of an invocation go once it completes. The handler emits through this interface
+ * only, so tests and benchmarks can plug in a sink which keeps the metrics around to be read.
+ */
+public interface MetricsSink {
+
+    /**
+     * A sink dropping all the metrics.
+     */
+    MetricsSink NONE = metrics -> {
+    };
+
+    /**
+     * Publishes the metrics of a completed invocation, once all of its batches completed, or of a completed replay of
+     * spilled requests. The replay runs on a thread of its own, so the sink may be called concurrently.
+     *
+     * @param metrics The metrics of the invocation or of the replay
+     */
+    void emit(InvocationMetrics metrics);
+
+    /**
+     * Creates the sink selected by `METRICS_SINK`: `emf` (the default) for a CloudWatch Embedded Metric Format line on
+     * standard output, or `none`.
+     *
+     * @return The configured sink
+     */
+    static MetricsSink fromEnvironment() {
+        String sink = Environment.get("METRICS_SINK", "emf").trim().toLowerCase();
+        return switch (sink) {
+            case "emf" -> EmfMetricsSink.fromEnvironment();
+            case "none" -> NONE;
+            default -> throw new IllegalStateException("Unknown METRICS_SINK: " + sink);
+        };
+    }
+}
@@ -0,0 +1,63 @@
+package com.adobe.aep.metrics.transport;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A repeatable entity streaming the remaining bytes of a buffer, which may be direct, without copying the whole
+ * payload onto the heap first.
+ */
+class ByteBufferEntity extends AbstractHttpEntity {
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final ByteBuffer body;
+
+    ByteBufferEntity(ByteBuffer body) {
+        this.body = body;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return body.remaining();
+    }
+
+    @Override
+    public InputStream getContent() {
+        ByteBuffer buffer = body.duplicate();
+        byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        ByteBuffer buffer = body.duplicate();
+        if (buffer.hasArray()) {
+            output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] chunk = new byte[Math.min(CHUNK_SIZE, buffer.remaining())];
+            while (buffer.hasRemaining()) {
+                int length = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, length);
+                output.write(chunk, 0, length);
+            }
+        }
+        output.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
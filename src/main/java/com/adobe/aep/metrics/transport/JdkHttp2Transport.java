@@ -0,0 +1,108 @@
+package com.adobe.aep.metrics.transport;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Flow;
+
+/**
+ * A remote_write transport on top of the JDK HTTP client using HTTP/2. Batches are multiplexed as streams over a
+ * single long-lived connection, which the client falls back to HTTP/1.1 for if the server doesn't negotiate HTTP/2.
+ */
+public class JdkHttp2Transport implements RemoteWriteTransport {
+
+    // The JDK client refuses to let these be set explicitly, it derives them itself
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("host", "connection", "content-length", "expect", "upgrade");
+
+    private final HttpClient client;
+    private final Duration readTimeout;
+    private final long maxPostMillis;
+
+    public JdkHttp2Transport(TransportConfig config) {
+        // The pool of the JDK client can only be tuned through system properties, which are read when the first
+        // client is created, so don't override anything the user has set explicitly
+        setPropertyIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(config.maxConnections()));
+        setPropertyIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(config.idleTimeoutMillis() / 1000));
+        setPropertyIfAbsent("jdk.httpclient.keepalive.timeout.h2", String.valueOf(config.idleTimeoutMillis() / 1000));
+
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(config.connectTimeoutMillis()))
+                .build();
+        this.readTimeout = Duration.ofMillis(config.readTimeoutMillis());
+        this.maxPostMillis = config.connectTimeoutMillis() + config.readTimeoutMillis();
+    }
+
+    @Override
+    public RemoteWriteResponse post(URI endpoint, Map<String, String> headers, ByteBuffer body) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(endpoint)
+                .timeout(readTimeout)
+                .POST(HttpRequest.BodyPublishers.fromPublisher(new ByteBufferPublisher(body), body.remaining()));
+        headers.forEach((name, value) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                request.header(name, value);
+            }
+        });
+
+        try {
+            HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            return new RemoteWriteResponse(response.statusCode(), response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the remote_write response", e);
+        }
+    }
+
+    @Override
+    public long maxPostMillis() {
+        return maxPostMillis;
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    /**
+     * Publishes the payload as a single buffer, rather than copying it into an array the client would copy again.
+     */
+    private record ByteBufferPublisher(ByteBuffer body) implements Flow.Publisher<ByteBuffer> {
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private boolean done;
+
+                @Override
+                public void request(long n) {
+                    if (done) {
+                        return;
+                    }
+                    done = true;
+                    if (n <= 0) {
+                        subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                    } else {
+                        subscriber.onNext(body.duplicate());
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    done = true;
+                }
+            });
+        }
+    }
+
+    private static void setPropertyIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.adobe.aep.metrics.transport;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A remote_write transport on top of a pooled Apache HTTP client. Connections are kept alive and reused across
+ * requests, so only the first batch sent by a container pays for the TCP and TLS handshake. Idle connections are
+ * evicted in the background so a container thawed after a long pause doesn't try to reuse a connection the server
+ * has already dropped.
+ *
+ * The pool waits for a free connection in a synchronized method, which pins a virtual thread to its carrier for as
+ * long as it waits. Callers therefore queue on a semaphore with a permit per connection first, and only ever lease a
+ * connection which is free, so that a burst of requests doesn't starve the carriers.
+ */
+public class PooledHttpTransport implements RemoteWriteTransport {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+    private final Semaphore leases;
+    private final long leaseTimeoutMillis;
+    private final long maxPostMillis;
+
+    public PooledHttpTransport(TransportConfig config) {
+        // No time to live: a connection is kept for as long as it is reused, and only evicted once idle
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(config.maxConnections());
+        // All the traffic goes to a single remote_write host, so it may use the whole pool
+        this.connectionManager.setDefaultMaxPerRoute(config.maxConnections());
+        this.connectionManager.setValidateAfterInactivity(1_000);
+        this.leases = new Semaphore(config.maxConnections(), true);
+        this.leaseTimeoutMillis = config.connectTimeoutMillis();
+        this.maxPostMillis = leaseTimeoutMillis + config.connectTimeoutMillis() + config.readTimeoutMillis();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) config.connectTimeoutMillis())
+                .setConnectionRequestTimeout((int) config.connectTimeoutMillis())
+                .setSocketTimeout((int) config.readTimeoutMillis())
+                .build();
+
+        this.client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(config.idleTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public RemoteWriteResponse post(URI endpoint, Map<String, String> headers, ByteBuffer body) throws IOException {
+        HttpPost post = new HttpPost(endpoint);
+        headers.forEach(post::setHeader);
+        post.setEntity(new ByteBufferEntity(body));
+
+        try {
+            if (!leases.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timeout waiting for connection from pool");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for connection from pool");
+        }
+        try (CloseableHttpResponse response = client.execute(post)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            // Always consume the entity, otherwise the connection can't be returned to the pool
+            String responseBody = response.getEntity() == null
+                    ? ""
+                    : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            return new RemoteWriteResponse(statusCode, responseBody);
+        } finally {
+            leases.release();
+        }
+    }
+
+    @Override
+    public long maxPostMillis() {
+        return maxPostMillis;
+    }
+
+    @Override
+    public void closeIdleConnections() {
+        connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+        connectionManager.close();
+    }
+}
@@ -0,0 +1,10 @@
+package com.adobe.aep.metrics.transport;
+
+public record RemoteWriteResponse(
+        int statusCode,
+        String body
+) {
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+}
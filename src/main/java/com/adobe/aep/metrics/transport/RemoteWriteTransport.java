@@ -0,0 +1,58 @@
+package com.adobe.aep.metrics.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * The HTTP transport used to deliver signed remote_write payloads. A transport is long-lived: it is created once by
+ * the handler and reused for every batch and across warm invocations, so implementations are expected to keep their
+ * connections open and pooled between calls.
+ *
+ * Keeping this behind an interface lets the handler be pointed at a local stub server, or at a fake transport, without
+ * any network or AWS access.
+ */
+public interface RemoteWriteTransport extends Closeable {
+
+    /**
+     * Posts the body to the given endpoint with the given headers and waits for the response.
+     *
+     * @param endpoint The full remote_write URL
+     * @param headers The request headers, already including the signature headers
+     * @param body The compressed payload, from its position to its limit. The buffer may be direct, and is neither
+     *             moved nor retained once the call returns, so it can be posted again on a retry
+     * @return The status code and body of the response
+     * @throws IOException If the request could not be completed
+     */
+    RemoteWriteResponse post(URI endpoint, Map<String, String> headers, ByteBuffer body) throws IOException;
+
+    /**
+     * @return The longest a single call to {@link #post} may take before it times out, from waiting for a connection
+     *         to reading the response, or zero if it isn't bounded by the transport
+     */
+    default long maxPostMillis() {
+        return 0;
+    }
+
+    /**
+     * Closes the connections which are kept open but not in use, e.g. before the JVM is checkpointed, as they wouldn't
+     * survive a restore. Transports which can't do so keep them, and rely on noticing that they are stale.
+     */
+    default void closeIdleConnections() {
+    }
+
+    /**
+     * Creates the transport described by the given configuration.
+     *
+     * @param config The transport configuration
+     * @return A pooled HTTP/1.1 transport, or an HTTP/2 transport when enabled in the configuration
+     */
+    static RemoteWriteTransport create(TransportConfig config) {
+        if (config.http2()) {
+            return new JdkHttp2Transport(config);
+        }
+        return new PooledHttpTransport(config);
+    }
+}
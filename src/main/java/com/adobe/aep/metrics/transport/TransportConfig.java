@@ -0,0 +1,40 @@
+package com.adobe.aep.metrics.transport;
+
+import com.adobe.aep.metrics.Environment;
+
+/**
+ * Connection settings for the remote_write transport.
+ *
+ * @param maxConnections The maximum number of pooled connections to the remote_write host
+ * @param idleTimeoutMillis How long an unused connection is kept in the pool before it is evicted
+ * @param connectTimeoutMillis The timeout for establishing a connection, including the TLS handshake
+ * @param readTimeoutMillis The timeout for waiting on the response
+ * @param http2 Whether to use HTTP/2 instead of a pool of HTTP/1.1 connections
+ */
+public record TransportConfig(
+        int maxConnections,
+        long idleTimeoutMillis,
+        long connectTimeoutMillis,
+        long readTimeoutMillis,
+        boolean http2
+) {
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 2_000;
+    public static final long DEFAULT_READ_TIMEOUT_MILLIS = 10_000;
+
+    public static TransportConfig defaults() {
+        return new TransportConfig(DEFAULT_MAX_CONNECTIONS, DEFAULT_IDLE_TIMEOUT_MILLIS,
+                DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, false);
+    }
+
+    public static TransportConfig fromEnvironment() {
+        return new TransportConfig(
+                Environment.getInt("HTTP_MAX_CONNECTIONS", DEFAULT_MAX_CONNECTIONS),
+                Environment.getLong("HTTP_IDLE_TIMEOUT_MS", DEFAULT_IDLE_TIMEOUT_MILLIS),
+                Environment.getLong("HTTP_CONNECT_TIMEOUT_MS", DEFAULT_CONNECT_TIMEOUT_MILLIS),
+                Environment.getLong("HTTP_READ_TIMEOUT_MS", DEFAULT_READ_TIMEOUT_MILLIS),
+                Environment.getBoolean("HTTP2_ENABLED", false)
+        );
+    }
+}
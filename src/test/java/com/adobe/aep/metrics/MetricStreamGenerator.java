@@ -0,0 +1,142 @@
+package com.adobe.aep.metrics;
+
+import com.adobe.aep.metrics.parse.MetricStreamParser;
+import com.adobe.aep.metrics.parse.StringCache;
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.amazonaws.services.lambda.runtime.events.KinesisFirehoseEvent;
+import com.fasterxml.jackson.core.JsonFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic CloudWatch metric stream data shaped like the DynamoDB metrics produced by
+ * `generate-dynamodb-metrics.py`: per table and operation series of the capacity, latency and error metrics, in the
+ * NDJSON format of the metric stream.
+ *
+ * Items are laid out the way a metric stream delivers them, every series for a minute before the next minute.
+ */
+public final class MetricStreamGenerator {
+
+    private static final String STREAM_NAME = "adobe-aep-metric-stream";
+    private static final String ACCOUNT_ID = "123456789012";
+    private static final String REGION = "us-east-1";
+    private static final String NAMESPACE = "AWS/DynamoDB";
+    private static final long START_TIMESTAMP = 1739499300000L;
+    private static final String[] METRIC_NAMES = {
+            "ConsumedReadCapacityUnits", "ConsumedWriteCapacityUnits", "SuccessfulRequestLatency",
+            "ReturnedItemCount", "ThrottledRequests", "UserErrors"
+    };
+    private static final String[] UNITS = {"Count", "Count", "Milliseconds", "Count", "Count", "Count"};
+    private static final String[] OPERATIONS = {"GetItem", "PutItem", "Query", "Scan", "UpdateItem", "DeleteItem"};
+
+    private final int series;
+    private final int samplesPerSeries;
+    private final long seed;
+
+    /**
+     * @param series The number of distinct series, each table has a series per metric and operation
+     * @param samplesPerSeries The number of consecutive minutes each series has a sample for
+     * @param seed The seed of the values, the same seed generates the same data
+     */
+    public MetricStreamGenerator(int series, int samplesPerSeries, long seed) {
+        this.series = series;
+        this.samplesPerSeries = samplesPerSeries;
+        this.seed = seed;
+    }
+
+    /**
+     * @return The NDJSON items, one per series and minute
+     */
+    public List<String> lines() {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<>(series * samplesPerSeries);
+        StringBuilder line = new StringBuilder(384);
+        for (int sample = 0; sample < samplesPerSeries; sample++) {
+            long timestamp = START_TIMESTAMP + sample * 60_000L;
+            for (int i = 0; i < series; i++) {
+                int metric = (i / OPERATIONS.length) % METRIC_NAMES.length;
+                double count = 1 + random.nextInt(60);
+                double min = Math.floor(random.nextDouble() * 100);
+                double max = min + Math.floor(random.nextDouble() * 100);
+                double sum = Math.floor((min + max) / 2 * count);
+                line.setLength(0);
+                line.append("{\"metric_stream_name\":\"").append(STREAM_NAME)
+                        .append("\",\"account_id\":\"").append(ACCOUNT_ID)
+                        .append("\",\"region\":\"").append(REGION)
+                        .append("\",\"namespace\":\"").append(NAMESPACE)
+                        .append("\",\"metric_name\":\"").append(METRIC_NAMES[metric])
+                        .append("\",\"dimensions\":{\"Operation\":\"").append(OPERATIONS[i % OPERATIONS.length])
+                        .append("\",\"TableName\":\"table-").append(i / (METRIC_NAMES.length * OPERATIONS.length))
+                        .append("\"},\"timestamp\":").append(timestamp)
+                        .append(",\"value\":{\"max\":").append(max)
+                        .append(",\"min\":").append(min)
+                        .append(",\"sum\":").append(sum)
+                        .append(",\"count\":").append(count)
+                        .append("},\"unit\":\"").append(UNITS[metric]).append("\"}");
+                lines.add(line.toString());
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return All the items as the NDJSON data of a single record
+     */
+    public byte[] ndjson() {
+        return (String.join("\n", lines()) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return All the items, parsed
+     */
+    public List<CloudWatchStreamMetric> metrics() {
+        List<CloudWatchStreamMetric> metrics = new ArrayList<>(series * samplesPerSeries);
+        MetricStreamParser parser = new MetricStreamParser(new JsonFactory(), new StringCache());
+        try (MetricStreamParser.Reader reader = parser.open(ByteBuffer.wrap(ndjson()))) {
+            CloudWatchStreamMetric metric;
+            while ((metric = reader.next()) != null) {
+                metrics.add(metric);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return metrics;
+    }
+
+    /**
+     * Splits the items into Firehose records the way Firehose buffers a metric stream.
+     *
+     * @param maxRecordBytes The maximum size of the data of a record
+     * @return An event with as many records as needed to carry all the items
+     */
+    public KinesisFirehoseEvent event(int maxRecordBytes) {
+        List<KinesisFirehoseEvent.Record> records = new ArrayList<>();
+        StringBuilder data = new StringBuilder(maxRecordBytes);
+        for (String line : lines()) {
+            if (data.length() > 0 && data.length() + line.length() + 1 > maxRecordBytes) {
+                records.add(record(records.size(), data));
+                data.setLength(0);
+            }
+            data.append(line).append('\n');
+        }
+        if (data.length() > 0) {
+            records.add(record(records.size(), data));
+        }
+        KinesisFirehoseEvent event = new KinesisFirehoseEvent();
+        event.setRecords(records);
+        return event;
+    }
+
+    private static KinesisFirehoseEvent.Record record(int index, CharSequence data) {
+        KinesisFirehoseEvent.Record record = new KinesisFirehoseEvent.Record();
+        record.setRecordId(String.format("%08d", index));
+        record.setData(ByteBuffer.wrap(data.toString().getBytes(StandardCharsets.UTF_8)));
+        return record;
+    }
+}
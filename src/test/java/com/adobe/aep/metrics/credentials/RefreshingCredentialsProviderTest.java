@@ -0,0 +1,236 @@
+package com.adobe.aep.metrics.credentials;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefreshingCredentialsProviderTest {
+
+    private static final Duration REFRESH_AHEAD = Duration.ofMinutes(5);
+    private static final Duration MAX_AGE = Duration.ofMinutes(15);
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    private final FakeProvider delegate = new FakeProvider();
+    private final Deque<Runnable> refreshes = new ArrayDeque<>();
+    private final RefreshingCredentialsProvider provider =
+            new RefreshingCredentialsProvider(delegate, clock, REFRESH_AHEAD, MAX_AGE, refreshes::add);
+
+    @Test
+    void cachesCredentialsUntilTheyAreDueForRefresh() {
+        AwsCredentials first = session("A", Duration.ofHours(1));
+        delegate.next(first);
+
+        assertSame(first, provider.resolveCredentials());
+        clock.advance(Duration.ofMinutes(54));
+        assertSame(first, provider.resolveCredentials());
+        assertEquals(1, delegate.calls);
+        assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    void refreshesAheadOfExpirationInTheBackground() {
+        AwsCredentials first = session("A", Duration.ofHours(1));
+        AwsCredentials second = session("A", Duration.ofHours(2));
+        delegate.next(first);
+        delegate.next(second);
+        provider.resolveCredentials();
+
+        clock.advance(Duration.ofMinutes(56));
+        // The cached credentials are still returned while the refresh is pending, and only one refresh is started
+        assertSame(first, provider.resolveCredentials());
+        assertSame(first, provider.resolveCredentials());
+        assertEquals(1, refreshes.size());
+        assertEquals(1, delegate.calls);
+
+        refreshes.remove().run();
+        assertSame(second, provider.resolveCredentials());
+        assertEquals(2, delegate.calls);
+    }
+
+    @Test
+    void resolvesExpiredCredentialsInline() {
+        AwsCredentials first = session("A", Duration.ofHours(1));
+        AwsCredentials second = session("A", Duration.ofHours(2));
+        delegate.next(first);
+        delegate.next(second);
+        provider.resolveCredentials();
+
+        clock.advance(Duration.ofHours(1));
+        assertSame(second, provider.resolveCredentials());
+        assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    void refreshesCredentialsWithoutExpirationOnceTheyReachMaxAge() {
+        AwsCredentials first = AwsBasicCredentials.create("A", "secret-A");
+        AwsCredentials second = AwsBasicCredentials.create("A", "secret-A");
+        delegate.next(first);
+        delegate.next(second);
+        provider.resolveCredentials();
+
+        clock.advance(MAX_AGE.minusSeconds(1));
+        provider.resolveCredentials();
+        assertTrue(refreshes.isEmpty());
+
+        clock.advance(Duration.ofSeconds(1));
+        assertSame(first, provider.resolveCredentials());
+        refreshes.remove().run();
+        assertSame(second, provider.resolveCredentials());
+    }
+
+    @Test
+    void refreshesShortLivedCredentialsHalfWayThroughTheirLifetime() {
+        delegate.next(session("A", Duration.ofMinutes(4)));
+        delegate.next(session("A", Duration.ofHours(1)));
+        provider.resolveCredentials();
+
+        clock.advance(Duration.ofMinutes(2).minusSeconds(1));
+        provider.resolveCredentials();
+        assertTrue(refreshes.isEmpty());
+
+        clock.advance(Duration.ofSeconds(1));
+        provider.resolveCredentials();
+        assertEquals(1, refreshes.size());
+    }
+
+    @Test
+    void notifiesListenersWhenTheKeyRotates() {
+        List<AwsCredentials> rotations = new ArrayList<>();
+        provider.onRotation(rotations::add);
+        AwsCredentials reissued = session("A", Duration.ofHours(2));
+        AwsCredentials rotated = session("B", Duration.ofHours(3));
+        delegate.next(session("A", Duration.ofHours(1)));
+        delegate.next(reissued);
+        delegate.next(rotated);
+
+        provider.resolveCredentials();
+        assertTrue(rotations.isEmpty());
+
+        // Same key with a later expiration
+        clock.advance(Duration.ofHours(1));
+        provider.resolveCredentials();
+        assertTrue(rotations.isEmpty());
+
+        clock.advance(Duration.ofHours(1));
+        provider.resolveCredentials();
+        assertEquals(List.of(rotated), rotations);
+    }
+
+    @Test
+    void keepsCachedCredentialsWhenABackgroundRefreshFails() {
+        AwsCredentials first = session("A", Duration.ofHours(1));
+        AwsCredentials second = session("A", Duration.ofHours(2));
+        delegate.next(first);
+        delegate.fail(new IllegalStateException("unavailable"));
+        delegate.next(second);
+        provider.resolveCredentials();
+
+        clock.advance(Duration.ofMinutes(56));
+        provider.resolveCredentials();
+        refreshes.remove().run();
+        assertSame(first, provider.resolveCredentials());
+
+        // The failed refresh doesn't hold back the next one
+        assertEquals(1, refreshes.size());
+        refreshes.remove().run();
+        assertSame(second, provider.resolveCredentials());
+    }
+
+    @Test
+    void propagatesFailureWhenNothingUsableIsCached() {
+        AwsCredentials recovered = session("A", Duration.ofHours(1));
+        delegate.fail(new IllegalStateException("unavailable"));
+        delegate.next(recovered);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, provider::resolveCredentials);
+        assertEquals("unavailable", e.getMessage());
+        assertSame(recovered, provider.resolveCredentials());
+    }
+
+    @Test
+    void resolvesFromTheDelegateOnceInvalidated() {
+        AwsCredentials first = session("A", Duration.ofHours(1));
+        AwsCredentials second = session("B", Duration.ofHours(1));
+        delegate.next(first);
+        delegate.next(second);
+        provider.resolveCredentials();
+
+        provider.invalidate();
+        assertSame(second, provider.resolveCredentials());
+        assertEquals(2, delegate.calls);
+    }
+
+    private AwsCredentials session(String accessKeyId, Duration lifetime) {
+        return AwsSessionCredentials.builder()
+                .accessKeyId(accessKeyId)
+                .secretAccessKey("secret-" + accessKeyId)
+                .sessionToken("token")
+                .expirationTime(clock.instant().plus(lifetime))
+                .build();
+    }
+
+    private static final class FakeProvider implements AwsCredentialsProvider {
+
+        private final Deque<Supplier<AwsCredentials>> responses = new ArrayDeque<>();
+        private int calls;
+
+        void next(AwsCredentials credentials) {
+            responses.add(() -> credentials);
+        }
+
+        void fail(RuntimeException e) {
+            responses.add(() -> {
+                throw e;
+            });
+        }
+
+        @Override
+        public AwsCredentials resolveCredentials() {
+            calls++;
+            return responses.remove().get();
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.adobe.aep.metrics.dispatch;
+
+import com.adobe.aep.metrics.encode.WriteRequestEncoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferOverflowException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.adobe.aep.metrics.dispatch.MetricBatcherTest.item;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchDispatcherTest {
+
+    private static final long MINUTE = 60_000;
+    private static final long START = 1_700_000_000_000L;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<MetricBatch> completed = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void sendsTheBatchesOfASeriesInOrder() throws InterruptedException {
+        MetricBatch first = batch("r1", START, "a");
+        MetricBatch second = batch("r2", START + MINUTE, "a");
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        BatchDispatcher dispatcher = new BatchDispatcher(executor, 4, batch -> {
+            if (batch == first) {
+                await(releaseFirst);
+            } else {
+                secondStarted.countDown();
+            }
+            completed.add(batch);
+            return List.of();
+        });
+
+        dispatcher.dispatch(first);
+        dispatcher.dispatch(second);
+
+        // The second batch would be written first, and the samples of the first rejected as out of order
+        assertFalse(secondStarted.await(200, TimeUnit.MILLISECONDS));
+        releaseFirst.countDown();
+        assertEquals(Map.of(), dispatcher.awaitCompletion());
+        assertEquals(List.of(first, second), completed);
+    }
+
+    @Test
+    void sendsBatchesOfOtherSeriesConcurrently() throws InterruptedException {
+        MetricBatch first = batch("r1", START, "a");
+        MetricBatch second = batch("r2", START, "b");
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        BatchDispatcher dispatcher = new BatchDispatcher(executor, 4, batch -> {
+            if (batch == first) {
+                await(releaseFirst);
+            }
+            completed.add(batch);
+            return List.of();
+        });
+
+        dispatcher.dispatch(first);
+        dispatcher.dispatch(second);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while (!completed.contains(second)) {
+                Thread.sleep(1);
+            }
+        });
+        releaseFirst.countDown();
+        dispatcher.awaitCompletion();
+        assertEquals(List.of(second, first), completed);
+    }
+
+    @Test
+    void waitsForEveryEarlierBatchOfItsSeries() throws InterruptedException {
+        MetricBatch first = batch("r1", START, "a");
+        MetricBatch second = batch("r2", START, "b");
+        MetricBatch third = batch("r3", START + MINUTE, "a", "b");
+        CountDownLatch releaseSecond = new CountDownLatch(1);
+        BatchDispatcher dispatcher = new BatchDispatcher(executor, 4, batch -> {
+            if (batch == second) {
+                await(releaseSecond);
+            }
+            completed.add(batch);
+            return List.of();
+        });
+
+        dispatcher.dispatch(first);
+        dispatcher.dispatch(second);
+        dispatcher.dispatch(third);
+        Thread.sleep(100);
+        assertFalse(completed.contains(third));
+        releaseSecond.countDown();
+        dispatcher.awaitCompletion();
+
+        assertEquals(third, completed.get(2));
+    }
+
+    @Test
+    void sendsABatchAfterTheOneBeforeItFailed() throws InterruptedException {
+        MetricBatch first = batch("r1", START, "a");
+        MetricBatch second = batch("r2", START + MINUTE, "a");
+        BatchDispatcher dispatcher = new BatchDispatcher(executor, 1, batch -> {
+            completed.add(batch);
+            if (batch == first) {
+                throw new IOException("connection reset");
+            }
+            return List.of();
+        });
+
+        dispatcher.dispatch(first);
+        dispatcher.dispatch(second);
+
+        assertEquals(Map.of("r1", "connection reset"), dispatcher.awaitCompletion());
+        assertEquals(List.of(first, second), completed);
+    }
+
+    @Test
+    void reportsAnExceptionWithoutAMessageByItsType() throws InterruptedException {
+        BatchDispatcher dispatcher = new BatchDispatcher(executor, 2, batch -> {
+            throw new BufferOverflowException();
+        });
+
+        dispatcher.dispatch(batch("r1", START, "a"));
+
+        assertEquals(Map.of("r1", "java.nio.BufferOverflowException"), dispatcher.awaitCompletion());
+    }
+
+    @Test
+    void collectsTheRecordsOfUndeliveredSeries() throws InterruptedException {
+        MetricBatch batch = batch("r1", START, "a");
+        BatchDispatcher dispatcher = new BatchDispatcher(executor, 2,
+                sent -> List.of(new DeliveryFailure(sent.recordIds(), "HTTP 400: out of order sample")));
+
+        dispatcher.dispatch(batch);
+
+        assertEquals(Map.of("r1", "HTTP 400: out of order sample"), dispatcher.awaitCompletion());
+    }
+
+    @Test
+    void rejectsAnEmptyWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchDispatcher(executor, 0, batch -> List.of()));
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedIOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * @return A batch of a sample of every given instance at the timestamp, from a single record
+     */
+    private static MetricBatch batch(String recordId, long timestamp, String... instances) {
+        MetricBatcher batcher = new MetricBatcher(new WriteRequestEncoder(), BatchLimits.defaults());
+        for (String instance : instances) {
+            batcher.add(item("Latency", instance, timestamp), recordId);
+        }
+        return batcher.flush();
+    }
+}
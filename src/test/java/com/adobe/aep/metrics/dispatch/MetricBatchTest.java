@@ -0,0 +1,56 @@
+package com.adobe.aep.metrics.dispatch;
+
+import com.adobe.aep.metrics.encode.WriteRequestEncoder;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.adobe.aep.metrics.dispatch.MetricBatcherTest.item;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricBatchTest {
+
+    private static final long MINUTE = 60_000;
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    void splitsBySeriesInProportionToTheirSamples() {
+        MetricBatcher batcher = new MetricBatcher(new WriteRequestEncoder(), BatchLimits.defaults());
+        // Three samples of the first series in r1, one of each of the two others in r2
+        for (int i = 0; i < 3; i++) {
+            batcher.add(item("Latency", "a", START + i * MINUTE), "r1");
+        }
+        batcher.add(item("Latency", "b", START), "r2");
+        batcher.add(item("Latency", "c", START), "r2");
+        MetricBatch batch = batcher.flush();
+
+        List<MetricBatch> halves = batch.split();
+
+        assertEquals(2, halves.size());
+        MetricBatch first = halves.get(0);
+        MetricBatch second = halves.get(1);
+        assertEquals(batch.series().subList(0, 1), first.series());
+        assertEquals(batch.series().subList(1, 3), second.series());
+        assertEquals(batch.samples(), first.samples() + second.samples());
+        assertEquals(batch.estimatedBytes(), first.estimatedBytes() + second.estimatedBytes());
+        assertEquals(12, first.samples());
+        assertEquals(batch.estimatedBytes() * 3 / 5, first.estimatedBytes());
+        assertEquals(Set.of("r1"), first.recordIds());
+        assertEquals(Set.of("r2"), second.recordIds());
+    }
+
+    @Test
+    void splitsHalvesUntilASingleSeriesIsLeft() {
+        MetricBatcher batcher = new MetricBatcher(new WriteRequestEncoder(), BatchLimits.defaults());
+        batcher.add(item("Latency", "a", START), "r1");
+        batcher.add(item("Latency", "b", START), "r1");
+        MetricBatch batch = batcher.flush();
+
+        List<MetricBatch> halves = batch.split();
+
+        assertEquals(1, halves.get(0).size());
+        assertEquals(1, halves.get(1).size());
+        assertNull(halves.get(0).split());
+    }
+}
@@ -0,0 +1,165 @@
+package com.adobe.aep.metrics.dispatch;
+
+import com.adobe.aep.metrics.encode.EncodedPayload;
+import com.adobe.aep.metrics.encode.WriteRequestEncoder;
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.adobe.aep.metrics.records.Value;
+import com.adobe.aep.metrics.relabel.Relabeler;
+import com.adobe.aep.metrics.relabel.SeriesLimiter;
+import com.adobe.aep.metrics.series.AggregationWindow;
+import com.adobe.aep.metrics.series.Series;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricBatcherTest {
+
+    private static final long MINUTE = 60_000;
+    private static final long START = 1_700_000_000_000L;
+
+    private final WriteRequestEncoder encoder = new WriteRequestEncoder();
+
+    @Test
+    void closesTheBatchAtTheSampleLimit() {
+        // Every item is written as a sample of each of the four statistics
+        MetricBatcher batcher = new MetricBatcher(encoder, new BatchLimits(Long.MAX_VALUE, 8, Integer.MAX_VALUE));
+
+        assertNull(batcher.add(item("Latency", "a", START), "r1"));
+        assertNull(batcher.add(item("Latency", "a", START + MINUTE), "r1"));
+        MetricBatch closed = batcher.add(item("Latency", "a", START + 2 * MINUTE), "r2");
+
+        assertNotNull(closed);
+        assertEquals(1, closed.size());
+        assertEquals(8, closed.samples());
+        assertEquals(2, closed.series().get(0).size());
+        assertEquals(Set.of("r1"), closed.recordIds());
+
+        MetricBatch last = batcher.flush();
+        assertEquals(4, last.samples());
+        assertEquals(Set.of("r2"), last.recordIds());
+    }
+
+    @Test
+    void closesTheBatchAtTheSeriesLimit() {
+        MetricBatcher batcher = new MetricBatcher(encoder, new BatchLimits(Long.MAX_VALUE, Integer.MAX_VALUE, 8));
+
+        assertNull(batcher.add(item("Latency", "a", START), "r1"));
+        assertNull(batcher.add(item("Latency", "b", START), "r1"));
+        // A sample of a series already in the batch adds no series
+        assertNull(batcher.add(item("Latency", "a", START + MINUTE), "r1"));
+        MetricBatch closed = batcher.add(item("Latency", "c", START), "r1");
+
+        assertNotNull(closed);
+        assertEquals(2, closed.size());
+        assertEquals(12, closed.samples());
+        assertEquals(1, batcher.flush().size());
+    }
+
+    @Test
+    void keepsTheEstimatedSizeUnderTheByteLimit() throws IOException {
+        long maxBytes = 4096;
+        MetricBatcher batcher = new MetricBatcher(encoder, new BatchLimits(maxBytes, Integer.MAX_VALUE, Integer.MAX_VALUE));
+
+        List<MetricBatch> batches = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            MetricBatch closed = batcher.add(item("Metric" + i % 7, "instance-" + i % 13, START + i / 91 * MINUTE), "r" + i / 50);
+            if (closed != null) {
+                batches.add(closed);
+            }
+        }
+        batches.add(batcher.flush());
+
+        assertTrue(batches.size() > 1);
+        int samples = 0;
+        for (MetricBatch batch : batches) {
+            assertTrue(batch.estimatedBytes() <= maxBytes, () -> batch.estimatedBytes() + " bytes");
+            samples += batch.samples();
+            try (EncodedPayload payload = encoder.encode(batch.series())) {
+                // The estimate only leaves out the longer length prefixes of series with many samples
+                assertEquals(batch.estimatedBytes(), payload.uncompressedSize(), batch.estimatedBytes() / 100.0);
+            }
+        }
+        assertEquals(500 * 4, samples);
+    }
+
+    @Test
+    void startsEveryBatchWithAnItemLargerThanTheLimit() {
+        MetricBatcher batcher = new MetricBatcher(encoder, new BatchLimits(1, Integer.MAX_VALUE, Integer.MAX_VALUE));
+
+        assertNull(batcher.add(item("Latency", "a", START), "r1"));
+        MetricBatch closed = batcher.add(item("Latency", "a", START + MINUTE), "r2");
+
+        assertEquals(1, closed.size());
+        assertEquals(4, closed.samples());
+        assertEquals(4, batcher.flush().samples());
+        assertNull(batcher.flush());
+    }
+
+    @Test
+    void skipsItemsWithoutValue() {
+        MetricBatcher batcher = new MetricBatcher(encoder, BatchLimits.defaults());
+        CloudWatchStreamMetric item = item("Latency", "a", START);
+
+        assertNull(batcher.add(new CloudWatchStreamMetric(item.metricsStreamName(), item.accountId(), item.region(),
+                item.namespace(), item.metricName(), item.dimensions(), item.timestamp(), null, item.unit()), "r1"));
+        assertNull(batcher.flush());
+    }
+
+    @Test
+    void dropsDuplicatesAndMergesWithinTheAggregationWindow() {
+        MetricBatcher batcher = new MetricBatcher(encoder, BatchLimits.defaults(),
+                new AggregationWindow(5 * MINUTE, AggregationWindow.DEFAULT_MAX_TRACKED_SAMPLES), Relabeler.NONE,
+                new SeriesLimiter(0));
+
+        batcher.add(item("Latency", "a", START), "r1");
+        batcher.add(item("Latency", "a", START), "r1");
+        batcher.add(item("Latency", "a", START + MINUTE), "r2");
+
+        MetricBatch batch = batcher.flush();
+        assertEquals(1, batch.size());
+        assertEquals(1, batch.series().get(0).size());
+        assertEquals(4, batch.samples());
+        assertEquals(2, batcher.collapsed());
+        assertEquals(Set.of("r1", "r2"), batch.recordIds());
+    }
+
+    @Test
+    void writesASeriesReportedInMillisecondsAndSecondsOnce() {
+        MetricBatcher batcher = new MetricBatcher(encoder, BatchLimits.defaults());
+
+        batcher.add(item("Latency", "a", START, "Milliseconds"), "r1");
+        batcher.add(item("Latency", "a", START + MINUTE, "Seconds"), "r2");
+        MetricBatch batch = batcher.flush();
+
+        assertEquals(1, batch.size());
+        Series series = batch.series().get(0);
+        assertEquals(2, series.size());
+        // Both samples are in seconds
+        assertEquals(0.003, series.max(0), 1e-12);
+        assertEquals(3, series.max(1));
+        assertEquals(Set.of("r1", "r2"), batch.recordIds());
+    }
+
+    @Test
+    void dropsItemsWithoutAMetricName() {
+        MetricBatcher batcher = new MetricBatcher(encoder, BatchLimits.defaults());
+
+        assertNull(batcher.add(item(null, "a", START), "r1"));
+        assertNull(batcher.flush());
+    }
+
+    static CloudWatchStreamMetric item(String metricName, String instance, long timestamp) {
+        return item(metricName, instance, timestamp, "Milliseconds");
+    }
+
+    static CloudWatchStreamMetric item(String metricName, String instance, long timestamp, String unit) {
+        return new CloudWatchStreamMetric("stream", "123456789012", "us-east-1", "AWS/Test", metricName,
+                Map.of("InstanceId", instance), timestamp, new Value(1, 3, 4, 2), unit);
+    }
+}
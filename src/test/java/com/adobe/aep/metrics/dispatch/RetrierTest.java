@@ -0,0 +1,116 @@
+package com.adobe.aep.metrics.dispatch;
+
+import com.adobe.aep.metrics.transport.RemoteWriteResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetrierTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC);
+    private static final long FAR_DEADLINE = CLOCK.millis() + 60_000;
+    // No backoff, so the tests don't sleep
+    private static final RetryPolicy POLICY = new RetryPolicy(3, 0, 0, 2_000);
+
+    private final Retrier retrier = new Retrier(POLICY, 0, CLOCK);
+
+    @ParameterizedTest
+    @ValueSource(ints = {200, 204})
+    void deliversOnSuccess(int status) {
+        Retrier.Result result = retrier.deliver(responses(status), FAR_DEADLINE);
+
+        assertEquals(Retrier.Outcome.DELIVERED, result.outcome());
+        assertEquals(1, result.attempts());
+        assertNull(result.reason());
+    }
+
+    @Test
+    void reportsTooLargeWithoutRetrying() {
+        Retrier.Result result = retrier.deliver(responses(413), FAR_DEADLINE);
+
+        assertEquals(Retrier.Outcome.TOO_LARGE, result.outcome());
+        assertEquals(1, result.attempts());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {400, 401, 404, 409, 422})
+    void rejectsInvalidRequestsWithoutRetrying(int status) {
+        Retrier.Result result = retrier.deliver(responses(status), FAR_DEADLINE);
+
+        assertEquals(Retrier.Outcome.REJECTED, result.outcome());
+        assertEquals(1, result.attempts());
+        assertEquals("Status " + status + ": body", result.reason());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {403, 408, 429, 500, 502, 503})
+    void retriesTransientStatuses(int status) {
+        assertEquals(Retrier.Outcome.DELIVERED, retrier.deliver(responses(status, 200), FAR_DEADLINE).outcome());
+
+        Retrier.Result result = retrier.deliver(responses(status, status, status), FAR_DEADLINE);
+        assertEquals(Retrier.Outcome.EXHAUSTED, result.outcome());
+        assertEquals(POLICY.maxAttempts(), result.attempts());
+        assertEquals("Status " + status + ": body", result.reason());
+    }
+
+    @Test
+    void retriesConnectionErrors() {
+        Deque<Object> outcomes = new ArrayDeque<>();
+        outcomes.add(new SocketTimeoutException("Read timed out"));
+        outcomes.add(new RemoteWriteResponse(200, ""));
+
+        Retrier.Result result = retrier.deliver(() -> {
+            Object next = outcomes.remove();
+            if (next instanceof IOException e) {
+                throw e;
+            }
+            return (RemoteWriteResponse) next;
+        }, FAR_DEADLINE);
+
+        assertEquals(Retrier.Outcome.DELIVERED, result.outcome());
+        assertEquals(2, result.attempts());
+    }
+
+    @Test
+    void stopsRetryingWhenTheAttemptCouldOutlastTheDeadline() {
+        // The margin and a whole attempt fit before the deadline, but not with another one
+        long deadline = CLOCK.millis() + POLICY.timeMarginMillis() + 10_000;
+
+        Retrier.Result fitting = new Retrier(POLICY, 10_000, CLOCK).deliver(responses(503, 200), deadline);
+        assertEquals(Retrier.Outcome.DELIVERED, fitting.outcome());
+
+        Retrier.Result late = new Retrier(POLICY, 10_001, CLOCK).deliver(responses(503, 200), deadline);
+        assertEquals(Retrier.Outcome.EXHAUSTED, late.outcome());
+        assertEquals(1, late.attempts());
+        assertEquals("Status 503: body", late.reason());
+    }
+
+    @Test
+    void allowsAttemptsWhichEndBeforeTheMargin() {
+        Retrier retrier = new Retrier(POLICY, 10_000, CLOCK);
+        long deadline = CLOCK.millis() + POLICY.timeMarginMillis() + 10_000;
+
+        assertEquals(10_000, retrier.remainingMillis(deadline));
+        assertTrue(retrier.canAttempt(deadline));
+        assertFalse(retrier.canAttempt(deadline - 1));
+        assertEquals(-1, retrier.remainingMillis(CLOCK.millis() + POLICY.timeMarginMillis() - 1));
+    }
+
+    private static Retrier.Attempt responses(int... statuses) {
+        Deque<Integer> remaining = new ArrayDeque<>();
+        for (int status : statuses) {
+            remaining.add(status);
+        }
+        return () -> new RemoteWriteResponse(remaining.remove(), "body");
+    }
+}
@@ -0,0 +1,142 @@
+package com.adobe.aep.metrics.encode;
+
+import org.junit.jupiter.api.Test;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaSnappyCompressorTest {
+
+    private final SnappyCompressor compressor = SnappyCompressor.pureJava();
+
+    @Test
+    void roundTripsEmptyInput() throws IOException {
+        assertRoundTrips(new byte[0]);
+    }
+
+    @Test
+    void roundTripsInputShorterThanTheMatchMargin() throws IOException {
+        for (int length = 1; length < 20; length++) {
+            assertRoundTrips(Arrays.copyOf("remote_write request".getBytes(StandardCharsets.US_ASCII), length));
+        }
+    }
+
+    @Test
+    void roundTripsRepetitiveInput() throws IOException {
+        byte[] input = "aws_dynamodb_consumed_read_capacity_units_sum{TableName=\"orders\"} 1.0\n"
+                .repeat(500).getBytes(StandardCharsets.US_ASCII);
+        byte[] compressed = assertRoundTrips(input);
+        assertTrue(compressed.length < input.length / 10, "compressed to " + compressed.length);
+    }
+
+    @Test
+    void roundTripsRunsOfASingleByte() throws IOException {
+        // Matches overlapping their own output, split into copies of at most 64 bytes
+        for (int length : new int[]{5, 64, 67, 68, 69, 128, 1000}) {
+            byte[] input = new byte[length + 1];
+            Arrays.fill(input, 1, input.length, (byte) 'x');
+            assertRoundTrips(input);
+        }
+    }
+
+    @Test
+    void roundTripsRandomInput() throws IOException {
+        // Incompressible, so written as literals which take more than a single length byte
+        for (int length : new int[]{59, 60, 61, 255, 256, 257, 1000, 70_000}) {
+            assertRoundTrips(random(length, 256, length));
+        }
+    }
+
+    @Test
+    void roundTripsInputSpanningSeveralFragments() throws IOException {
+        // A small alphabet gives matches of every length and offset, across the 64 KB fragment boundaries
+        assertRoundTrips(random(300_000, 4, 42));
+        assertRoundTrips(random((1 << 16) + 1, 16, 43));
+        assertRoundTrips(random(3 << 16, 16, 44));
+    }
+
+    @Test
+    void roundTripsFarMatchesWithinAFragment() throws IOException {
+        // A block repeated after a random gap is matched with a 2 byte offset
+        byte[] block = random(200, 256, 7);
+        byte[] input = new byte[60_000];
+        System.arraycopy(block, 0, input, 0, block.length);
+        System.arraycopy(random(50_000, 256, 8), 0, input, block.length, 50_000);
+        System.arraycopy(block, 0, input, 50_200, block.length);
+        assertRoundTrips(input);
+    }
+
+    @Test
+    void compressesFromThePositionToTheLimit() throws IOException {
+        byte[] payload = "label_name=label_value,".repeat(100).getBytes(StandardCharsets.US_ASCII);
+        byte[] padded = new byte[payload.length + 20];
+        Arrays.fill(padded, (byte) 0x7f);
+        System.arraycopy(payload, 0, padded, 7, payload.length);
+        ByteBuffer input = ByteBuffer.wrap(padded, 7, payload.length).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer output = ByteBuffer.allocate(compressor.maxCompressedLength(payload.length) + 11);
+        output.position(11);
+
+        int size = compressor.compress(input, output);
+
+        assertEquals(7, input.position());
+        assertEquals(7 + payload.length, input.limit());
+        assertEquals(11, output.position());
+        assertEquals(11 + size, output.limit());
+        byte[] compressed = new byte[size];
+        output.get(11, compressed);
+        assertArrayEquals(payload, Snappy.uncompress(compressed));
+    }
+
+    @Test
+    void compressesHeapBuffers() throws IOException {
+        byte[] input = random(100_000, 8, 9);
+        ByteBuffer output = ByteBuffer.allocate(compressor.maxCompressedLength(input.length));
+
+        int size = compressor.compress(ByteBuffer.wrap(input), output);
+
+        assertArrayEquals(input, Snappy.uncompress(Arrays.copyOf(output.array(), size)));
+    }
+
+    @Test
+    void compressesAboutAsWellAsTheNativeLibrary() throws IOException {
+        byte[] input = random(200_000, 8, 10);
+        int pureJava = compress(compressor, input).length;
+        int nativeLibrary = compress(SnappyCompressor.nativeLibrary(), input).length;
+        assertTrue(pureJava <= nativeLibrary * 1.05, pureJava + " bytes against " + nativeLibrary);
+    }
+
+    private byte[] assertRoundTrips(byte[] input) throws IOException {
+        byte[] compressed = compress(compressor, input);
+        assertTrue(compressed.length <= compressor.maxCompressedLength(input.length));
+        assertArrayEquals(input, Snappy.uncompress(compressed), "input of " + input.length + " bytes");
+        return compressed;
+    }
+
+    private static byte[] compress(SnappyCompressor compressor, byte[] input) throws IOException {
+        // The native library only takes direct buffers
+        ByteBuffer direct = ByteBuffer.allocateDirect(input.length).put(input).flip();
+        ByteBuffer output = ByteBuffer.allocateDirect(compressor.maxCompressedLength(input.length));
+        byte[] compressed = new byte[compressor.compress(direct, output)];
+        output.get(0, compressed);
+        return compressed;
+    }
+
+    /**
+     * @return Bytes drawn at random from the first `alphabet` letters, fewer letters compressing better
+     */
+    private static byte[] random(int length, int alphabet, long seed) {
+        Random random = new Random(seed);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(alphabet));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,140 @@
+package com.adobe.aep.metrics.encode;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricNamerTest {
+
+    private static final NamingPolicy SNAKE_CASE = new NamingPolicy(true, false);
+    private static final NamingPolicy NAMESPACE_PREFIX = new NamingPolicy(false, true);
+    private static final NamingPolicy BOTH = new NamingPolicy(true, true);
+
+    @Test
+    void keepsValidNamesAsTheyAre() {
+        String name = "ConsumedReadCapacityUnits";
+
+        assertSame(name, MetricNamer.sanitize(name, true));
+        assertSame(name, MetricNamer.sanitize(name, false));
+        assertEquals("_private", MetricNamer.sanitize("_private", false));
+    }
+
+    @Test
+    void sanitizesInvalidCharacters() {
+        assertEquals("HTTPCode_Target_5XX_Count", MetricNamer.sanitize("HTTPCode_Target_5XX_Count", true));
+        assertEquals("Bytes_Second", MetricNamer.sanitize("Bytes/Second", true));
+        assertEquals("a_b_c", MetricNamer.sanitize("a-b.c", false));
+        assertEquals("_XXError", MetricNamer.sanitize("5XXError", true));
+        assertEquals("caf_", MetricNamer.sanitize("café", true));
+        assertEquals("", MetricNamer.sanitize("", true));
+    }
+
+    @Test
+    void allowsColonsInMetricNamesOnly() {
+        assertEquals("job:requests", MetricNamer.sanitize("job:requests", true));
+        assertEquals("job_requests", MetricNamer.sanitize("job:requests", false));
+        assertEquals(":requests", MetricNamer.sanitize(":requests", true));
+        assertEquals("_requests", MetricNamer.sanitize(":requests", false));
+    }
+
+    @Test
+    void convertsCamelCaseToSnakeCase() {
+        assertEquals("consumed_read_capacity_units", MetricNamer.snakeCase("ConsumedReadCapacityUnits"));
+        assertEquals("cpu_utilization", MetricNamer.snakeCase("CPUUtilization"));
+        assertEquals("http_code_target_5xx_count", MetricNamer.snakeCase("HTTPCode_Target_5XX_Count"));
+        assertEquals("table_name", MetricNamer.snakeCase("TableName"));
+        assertEquals("5xx_error", MetricNamer.snakeCase("5XXError"));
+        assertEquals("bytes_second", MetricNamer.snakeCase("Bytes/Second"));
+        assertEquals("already_snake", MetricNamer.snakeCase("already_snake"));
+        assertEquals("a_b", MetricNamer.snakeCase("a -- b"));
+        assertEquals("", MetricNamer.snakeCase(""));
+    }
+
+    @Test
+    void onlySanitizesByDefault() {
+        MetricNamer namer = new MetricNamer(NamingPolicy.defaults());
+
+        assertEquals("ConsumedReadCapacityUnits", namer.metricName("AWS/DynamoDB", "ConsumedReadCapacityUnits"));
+        assertEquals("TableName", namer.labelName("TableName"));
+        assertEquals("_XXError", namer.metricName("AWS/ApiGateway", "5XXError"));
+    }
+
+    @Test
+    void convertsNamesToSnakeCase() {
+        MetricNamer namer = new MetricNamer(SNAKE_CASE);
+
+        assertEquals("consumed_read_capacity_units", namer.metricName("AWS/DynamoDB", "ConsumedReadCapacityUnits"));
+        assertEquals("table_name", namer.labelName("TableName"));
+        // A leading digit is still invalid once the name is in snake case
+        assertEquals("_xx_error", namer.metricName("AWS/ApiGateway", "5XXError"));
+    }
+
+    @Test
+    void prefixesMetricNamesWithTheirNamespace() {
+        MetricNamer namer = new MetricNamer(NAMESPACE_PREFIX);
+
+        assertEquals("aws_dynamodb_ConsumedReadCapacityUnits",
+                namer.metricName("AWS/DynamoDB", "ConsumedReadCapacityUnits"));
+        assertEquals("aws_myapp_orders_Latency", namer.metricName("MyApp/Orders", "Latency"));
+        assertEquals("Latency", namer.metricName(null, "Latency"));
+        assertEquals("Latency", namer.metricName("", "Latency"));
+        // Labels are never prefixed
+        assertEquals("TableName", namer.labelName("TableName"));
+    }
+
+    @Test
+    void combinesThePolicies() {
+        MetricNamer namer = new MetricNamer(BOTH);
+
+        assertEquals("aws_dynamodb_consumed_read_capacity_units",
+                namer.metricName("AWS/DynamoDB", "ConsumedReadCapacityUnits"));
+        assertEquals("aws_applicationelb_http_code_target_5xx_count",
+                namer.metricName("AWS/ApplicationELB", "HTTPCode_Target_5XX_Count"));
+    }
+
+    @Test
+    void keepsMetricsOfNamespacesApartInTheCache() {
+        MetricNamer namer = new MetricNamer(NAMESPACE_PREFIX);
+
+        assertEquals("aws_ec2_CPUUtilization", namer.metricName("AWS/EC2", "CPUUtilization"));
+        assertEquals("aws_rds_CPUUtilization", namer.metricName("AWS/RDS", "CPUUtilization"));
+        assertEquals("aws_ec2_CPUUtilization", namer.metricName("AWS/EC2", "CPUUtilization"));
+    }
+
+    @Test
+    void renamesDimensionsNamedLikeTheLabelsOfTheWriter() {
+        MetricNamer namer = new MetricNamer(SNAKE_CASE);
+
+        assertEquals("dimension_account", namer.labelName("Account"));
+        assertEquals("dimension_account", namer.labelName("account"));
+        assertEquals("account_id", namer.labelName("AccountId"));
+        // Snake case drops leading underscores
+        assertEquals("name_", namer.labelName("__name__"));
+
+        MetricNamer sanitizing = new MetricNamer(NamingPolicy.defaults());
+        assertEquals("dimension_account", sanitizing.labelName("account"));
+        assertEquals("Account", sanitizing.labelName("Account"));
+        assertEquals("dimension___name__", sanitizing.labelName("__name__"));
+        assertEquals("dimension___meta", sanitizing.labelName("__meta"));
+        assertEquals("_meta", sanitizing.labelName("_meta"));
+    }
+
+    @Test
+    void namesAnItemWithoutAMetricName() {
+        MetricNamer namer = new MetricNamer(NamingPolicy.defaults());
+
+        assertEquals("", namer.metricName("AWS/EC2", null));
+        assertEquals("", namer.metricName(null, null));
+    }
+
+    @Test
+    void keepsNamingOnceTheCacheIsFull() {
+        MetricNamer namer = new MetricNamer(SNAKE_CASE, 2);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("metric" + i, namer.metricName("AWS/EC2", "Metric" + i));
+            assertEquals("dimension" + i, namer.labelName("Dimension" + i));
+        }
+        assertEquals("dimension_account", namer.labelName("Account"));
+    }
+}
@@ -0,0 +1,199 @@
+package com.adobe.aep.metrics.encode;
+
+import com.adobe.aep.metrics.series.CloudWatchUnit;
+import com.adobe.aep.metrics.series.Series;
+import com.adobe.aep.metrics.series.SeriesIndex;
+import com.adobe.aep.metrics.series.Statistic;
+import org.junit.jupiter.api.Test;
+import org.xerial.snappy.Snappy;
+import prometheus.Remote;
+import prometheus.Types;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteRequestEncoderTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private final SeriesIndex index = new SeriesIndex(16);
+    private final WriteRequestEncoder encoder = new WriteRequestEncoder();
+
+    @Test
+    void encodesLikeTheGeneratedBuilders() throws IOException {
+        // Dimension labels sort on either side of the name label, as uppercase letters sort before the underscore
+        Series latency = series("AWS/ApiGateway", "Latency", CloudWatchUnit.MILLISECONDS,
+                Map.of("ApiName", "orders", "Stage", "prod", "zone", "us-east-1a"));
+        latency.add(START, 1.5, 300, 1200, 12);
+        latency.add(START + 60_000, 2, 250, 900, 9);
+        Series errors = series("AWS/ApiGateway", "5XXError", CloudWatchUnit.COUNT, Map.of());
+        errors.add(START, 0, 1, 3, 60);
+
+        assertEncodedAs(expected(List.of(latency, errors)), encode(List.of(latency, errors)));
+    }
+
+    @Test
+    void writesMetadataOncePerFamily() throws IOException {
+        Series first = series("AWS/SQS", "NumberOfMessagesSent", CloudWatchUnit.COUNT, Map.of("QueueName", "a"));
+        first.add(START, 1, 1, 1, 1);
+        Series second = series("AWS/SQS", "NumberOfMessagesSent", CloudWatchUnit.COUNT, Map.of("QueueName", "b"));
+        second.add(START, 2, 2, 2, 1);
+
+        Remote.WriteRequest request = Remote.WriteRequest.parseFrom(encode(List.of(first, second)));
+
+        assertEquals(8, request.getTimeseriesCount());
+        assertEquals(4, request.getMetadataCount());
+        for (Statistic statistic : Statistic.values()) {
+            Types.MetricMetadata metadata = request.getMetadata(statistic.ordinal());
+            assertEquals("NumberOfMessagesSent" + statistic.suffix(), metadata.getMetricFamilyName());
+            assertEquals(Types.MetricMetadata.MetricType.GAUGE, metadata.getType());
+            assertEquals("CloudWatch metric AWS/SQS/NumberOfMessagesSent", metadata.getHelp());
+        }
+    }
+
+    @Test
+    void leavesOutRecentlyDeliveredMetadata() throws IOException {
+        WriteRequestEncoder caching = new WriteRequestEncoder(new BufferPool(), new MetricNamer(NamingPolicy.defaults()),
+                new MetadataCache(Duration.ofMinutes(1), Clock.systemUTC()));
+        Series series = series("AWS/SQS", "NumberOfMessagesSent", CloudWatchUnit.COUNT, Map.of("QueueName", "a"));
+        series.add(START, 1, 1, 1, 1);
+
+        try (EncodedPayload payload = caching.encode(List.of(series))) {
+            assertEquals(1, payload.metadataFamilies());
+            caching.delivered(payload);
+        }
+        try (EncodedPayload payload = caching.encode(List.of(series))) {
+            assertEquals(0, payload.metadataFamilies());
+            Remote.WriteRequest request = Remote.WriteRequest.parseFrom(uncompress(payload));
+            assertEquals(0, request.getMetadataCount());
+            assertEquals(4, request.getTimeseriesCount());
+        }
+    }
+
+    @Test
+    void skipsSeriesWithoutSamples() throws IOException {
+        Series empty = series("AWS/SQS", "NumberOfMessagesSent", CloudWatchUnit.COUNT, Map.of("QueueName", "a"));
+        Series nonEmpty = series("AWS/SQS", "NumberOfMessagesSent", CloudWatchUnit.COUNT, Map.of("QueueName", "b"));
+        nonEmpty.add(START, 1, 1, 1, 1);
+
+        assertArrayEquals(new byte[0], encode(List.of(empty)));
+        assertEncodedAs(expected(List.of(nonEmpty)), encode(List.of(empty, nonEmpty)));
+    }
+
+    @Test
+    void growsBuffersPastThePooledCapacity() throws IOException {
+        Series small = series("AWS/EC2", "CPUUtilization", CloudWatchUnit.PERCENT, Map.of("InstanceId", "i-0"));
+        small.add(START, 1, 2, 3, 4);
+        encode(List.of(small));
+
+        // Well past the smallest pooled buffer of 64 KB, with values which don't compress
+        List<Series> large = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            Series series = series("AWS/EC2", "CPUUtilization", CloudWatchUnit.PERCENT, Map.of("InstanceId", "i-" + i));
+            for (int j = 0; j < 20; j++) {
+                double value = Math.sqrt(i * 31 + j);
+                series.add(START + j * 60_000L, value, value * 2, value * 3, j + 1);
+            }
+            large.add(series);
+        }
+
+        byte[] encoded = encode(large);
+        assertTrue(encoded.length > 256 * 1024, () -> encoded.length + " bytes");
+        assertEncodedAs(expected(large), encoded);
+    }
+
+    @Test
+    void estimatesTheEncodedSize() throws IOException {
+        Map<String, String> dimensions = Map.of("ApiName", "orders", "Stage", "prod");
+        Series series = series("AWS/ApiGateway", "Latency", CloudWatchUnit.MILLISECONDS, dimensions);
+        series.add(START, 1.5, 300, 1200, 12);
+        series.add(START + 60_000, 2, 250, 900, 9);
+
+        String family = encoder.familyName("AWS/ApiGateway", "Latency", CloudWatchUnit.MILLISECONDS);
+        int estimate = encoder.seriesSize("123456789012", "Latency", dimensions, "AWS/ApiGateway", CloudWatchUnit.MILLISECONDS)
+                + encoder.metadataSize(family, "AWS/ApiGateway", "Latency", CloudWatchUnit.MILLISECONDS)
+                + 2 * encoder.sampleSize(START);
+
+        // The length prefix of every time series is measured without its samples, and may be a byte longer
+        int size = encode(List.of(series)).length;
+        assertTrue(size >= estimate && size <= estimate + encoder.seriesPerSeries(), () -> size + " bytes, estimated " + estimate);
+    }
+
+    private Series series(String namespace, String metricName, CloudWatchUnit unit, Map<String, String> dimensions) {
+        return index.get("123456789012", namespace, metricName, unit, dimensions);
+    }
+
+    private byte[] encode(List<Series> series) throws IOException {
+        try (EncodedPayload payload = encoder.encode(series)) {
+            byte[] uncompressed = uncompress(payload);
+            assertEquals(payload.uncompressedSize(), uncompressed.length);
+            return uncompressed;
+        }
+    }
+
+    private static byte[] uncompress(EncodedPayload payload) throws IOException {
+        ByteBuffer body = payload.body();
+        byte[] compressed = new byte[body.remaining()];
+        body.duplicate().get(compressed);
+        return Snappy.uncompress(compressed);
+    }
+
+    private static void assertEncodedAs(Remote.WriteRequest expected, byte[] encoded) throws IOException {
+        assertEquals(expected, Remote.WriteRequest.parseFrom(encoded));
+        assertArrayEquals(expected.toByteArray(), encoded);
+    }
+
+    /**
+     * Builds the request the series should be encoded as with the generated builders, every time series ahead of the
+     * metadata, which follows in the order the families first appear.
+     */
+    private Remote.WriteRequest expected(List<Series> series) {
+        Remote.WriteRequest.Builder request = Remote.WriteRequest.newBuilder();
+        Map<String, Series> families = new LinkedHashMap<>();
+        for (Series s : series) {
+            if (s.size() == 0) {
+                continue;
+            }
+            // Naming is left to the namer, which e.g. replaces the leading digit of 5XXError
+            String family = encoder.familyName(s.namespace(), s.metricName(), s.unit());
+            families.putIfAbsent(family, s);
+            for (Statistic statistic : Statistic.values()) {
+                List<Types.Label> labels = new ArrayList<>();
+                s.dimensions().forEach((name, value) -> labels.add(label(name, value)));
+                labels.add(label("account", s.accountId()));
+                labels.add(label("__name__", family + statistic.suffix()));
+                labels.sort(Comparator.comparing(Types.Label::getName));
+                Types.TimeSeries.Builder timeSeries = Types.TimeSeries.newBuilder().addAllLabels(labels);
+                for (int i = 0; i < s.size(); i++) {
+                    timeSeries.addSamples(Types.Sample.newBuilder()
+                            .setValue(statistic.value(s, i))
+                            .setTimestamp(s.timestamp(i)));
+                }
+                request.addTimeseries(timeSeries);
+            }
+        }
+        families.forEach((family, s) -> {
+            for (Statistic statistic : Statistic.values()) {
+                request.addMetadata(Types.MetricMetadata.newBuilder()
+                        .setType(Types.MetricMetadata.MetricType.GAUGE)
+                        .setMetricFamilyName(family + statistic.suffix())
+                        .setHelp("CloudWatch metric " + s.namespace() + "/" + s.metricName())
+                        .setUnit(s.unit().prometheusUnit()));
+            }
+        });
+        return request.build();
+    }
+
+    private static Types.Label label(String name, String value) {
+        return Types.Label.newBuilder().setName(name).setValue(value).build();
+    }
+}
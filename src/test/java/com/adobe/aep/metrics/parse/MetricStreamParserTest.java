@@ -0,0 +1,172 @@
+package com.adobe.aep.metrics.parse;
+
+import com.adobe.aep.metrics.MetricStreamGenerator;
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.adobe.aep.metrics.records.Value;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricStreamParserTest {
+
+    private static final String ITEM = "{\"metric_stream_name\":\"stream\",\"account_id\":\"123456789012\","
+            + "\"region\":\"us-east-1\",\"namespace\":\"AWS/DynamoDB\",\"metric_name\":\"ConsumedReadCapacityUnits\","
+            + "\"dimensions\":{\"TableName\":\"orders\",\"Operation\":\"GetItem\"},\"timestamp\":1739499300000,"
+            + "\"value\":{\"max\":4.0,\"min\":1.0,\"sum\":10.0,\"count\":4.0},\"unit\":\"Count\"}";
+    private static final CloudWatchStreamMetric PARSED = new CloudWatchStreamMetric("stream", "123456789012",
+            "us-east-1", "AWS/DynamoDB", "ConsumedReadCapacityUnits",
+            Map.of("TableName", "orders", "Operation", "GetItem"), 1739499300000L, new Value(1, 4, 10, 4), "Count");
+
+    private final MetricStreamParser parser = new MetricStreamParser(new JsonFactory(), new StringCache());
+
+    @Test
+    void readsEveryLineOfARecord() throws IOException {
+        String other = ITEM.replace("orders", "users");
+
+        List<CloudWatchStreamMetric> metrics = parse(ITEM + "\n" + other + "\n" + ITEM + "\n");
+
+        assertEquals(3, metrics.size());
+        assertEquals(PARSED, metrics.get(0));
+        assertEquals("users", metrics.get(1).dimensions().get("TableName"));
+        assertEquals(PARSED, metrics.get(2));
+    }
+
+    @Test
+    void skipsBlankLines() throws IOException {
+        assertEquals(List.of(PARSED, PARSED), parse("\n\n" + ITEM + "\n   \n\r\n" + ITEM + "\n\n\n"));
+        assertEquals(List.of(PARSED), parse(ITEM));
+        assertEquals(List.of(), parse(""));
+        assertEquals(List.of(), parse("\n \n"));
+    }
+
+    @Test
+    void readsItemsWhateverTheirLayout() throws IOException {
+        // The items are read as a stream of objects, so line breaks are optional between and allowed inside them
+        assertEquals(List.of(PARSED, PARSED), parse(ITEM + ITEM));
+        assertEquals(List.of(PARSED), parse(ITEM.replace(",", ",\n  ")));
+    }
+
+    @Test
+    void leavesMissingFieldsUnset() throws IOException {
+        CloudWatchStreamMetric metric = parse("{\"metric_name\":\"Errors\"}").get(0);
+
+        assertEquals(new CloudWatchStreamMetric(null, null, null, null, "Errors", null, 0, null, null), metric);
+        assertEquals(new Value(0, 0, 3, 0), parse("{\"value\":{\"sum\":3}}").get(0).value());
+        assertEquals(new CloudWatchStreamMetric(null, null, null, null, null, null, 0, null, null), parse("{}").get(0));
+    }
+
+    @Test
+    void readsNullFieldsAsUnset() throws IOException {
+        CloudWatchStreamMetric metric = parse("{\"metric_stream_name\":null,\"account_id\":null,\"region\":null,"
+                + "\"namespace\":null,\"metric_name\":null,\"dimensions\":null,\"value\":null,\"unit\":null}").get(0);
+
+        assertEquals(new CloudWatchStreamMetric(null, null, null, null, null, null, 0, null, null), metric);
+        assertEquals(Map.of("TableName", "orders"),
+                parse("{\"dimensions\":{\"TableName\":\"orders\"}}").get(0).dimensions());
+        assertNull(parse("{\"dimensions\":{\"TableName\":null}}").get(0).dimensions().get("TableName"));
+        assertEquals(Map.of(), parse("{\"dimensions\":{}}").get(0).dimensions());
+    }
+
+    @Test
+    void skipsUnknownFields() throws IOException {
+        String item = ITEM.replace("{\"metric_stream_name\"", "{\"tags\":{\"team\":[\"a\",{\"b\":1}]},"
+                        + "\"sequence\":42,\"partial\":true,\"note\":null,\"metric_stream_name\"")
+                .replace("\"count\":4.0}", "\"count\":4.0,\"p99\":3.5,\"buckets\":[1,2,{\"le\":3}]}");
+
+        assertEquals(List.of(PARSED, PARSED), parse(item + "\n" + item));
+    }
+
+    @Test
+    void readsBuffersWithoutAnAccessibleArray() throws IOException {
+        byte[] data = (ITEM + "\n" + ITEM + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+        ByteBuffer readOnly = ByteBuffer.wrap(data).asReadOnlyBuffer();
+
+        assertFalse(direct.hasArray());
+        assertFalse(readOnly.hasArray());
+        assertEquals(List.of(PARSED, PARSED), parse(direct));
+        assertEquals(List.of(PARSED, PARSED), parse(readOnly));
+        // The position is left untouched, so the record can be passed on as is
+        assertEquals(0, direct.position());
+        assertEquals(0, readOnly.position());
+    }
+
+    @Test
+    void readsFromThePositionToTheLimitOfTheBuffer() throws IOException {
+        byte[] data = ("garbage" + ITEM + "\ntrailing garbage").getBytes(StandardCharsets.UTF_8);
+        int start = "garbage".length();
+        ByteBuffer heap = ByteBuffer.wrap(data, start, ITEM.length()).slice();
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip()
+                .position(start).limit(start + ITEM.length());
+
+        assertEquals(List.of(PARSED), parse(heap));
+        assertEquals(List.of(PARSED), parse(direct));
+        assertEquals(start, direct.position());
+    }
+
+    @Test
+    void rejectsMalformedLines() throws IOException {
+        try (MetricStreamParser.Reader reader = open(ITEM + "\n{\"metric_name\": \"Errors\", \n")) {
+            assertEquals(PARSED, reader.next());
+            assertThrows(IOException.class, reader::next);
+        }
+        assertThrows(IOException.class, () -> parse("not json\n"));
+        assertThrows(IOException.class, () -> parse("[" + ITEM + "]"));
+        assertThrows(IOException.class, () -> parse("42\n"));
+        assertThrows(IOException.class, () -> parse("{\"dimensions\":[\"TableName\"]}"));
+        assertThrows(IOException.class, () -> parse("{\"value\":3}"));
+        assertThrows(IOException.class, () -> parse("{\"timestamp\":\"yesterday\"}"));
+    }
+
+    @Test
+    void sharesRepeatedStrings() throws IOException {
+        List<CloudWatchStreamMetric> metrics = parse(ITEM + "\n" + ITEM);
+
+        assertSame(metrics.get(0).namespace(), metrics.get(1).namespace());
+        assertSame(metrics.get(0).metricName(), metrics.get(1).metricName());
+        assertSame(metrics.get(0).dimensions().get("TableName"), metrics.get(1).dimensions().get("TableName"));
+    }
+
+    @Test
+    void readsGeneratedDataLikeObjectMapper() throws IOException {
+        MetricStreamGenerator generator = new MetricStreamGenerator(500, 3, 42);
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<CloudWatchStreamMetric> expected = new ArrayList<>();
+        for (String line : new String(generator.ndjson(), StandardCharsets.UTF_8).split("\n")) {
+            expected.add(objectMapper.readValue(line, CloudWatchStreamMetric.class));
+        }
+
+        List<CloudWatchStreamMetric> metrics = parse(ByteBuffer.wrap(generator.ndjson()));
+
+        assertEquals(1500, expected.size());
+        assertEquals(expected, metrics);
+    }
+
+    private List<CloudWatchStreamMetric> parse(String data) throws IOException {
+        return parse(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private List<CloudWatchStreamMetric> parse(ByteBuffer data) throws IOException {
+        List<CloudWatchStreamMetric> metrics = new ArrayList<>();
+        try (MetricStreamParser.Reader reader = parser.open(data)) {
+            CloudWatchStreamMetric metric;
+            while ((metric = reader.next()) != null) {
+                metrics.add(metric);
+            }
+        }
+        return metrics;
+    }
+
+    private MetricStreamParser.Reader open(String data) throws IOException {
+        return parser.open(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,215 @@
+package com.adobe.aep.metrics.relabel;
+
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.adobe.aep.metrics.records.Value;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelabelerTest {
+
+    @Test
+    void keepsOnlyTheAllowedDimensions() {
+        Relabeler relabeler = new Relabeler(List.of(rule("AWS/EC2").keep(Set.of("InstanceId")).build()));
+
+        CloudWatchStreamMetric relabeled = relabeler.relabel(item("AWS/EC2",
+                dimensions("AutoScalingGroupName", "web", "InstanceId", "i-1", "ImageId", "ami-1")));
+
+        assertEquals(Map.of("InstanceId", "i-1"), relabeled.dimensions());
+    }
+
+    @Test
+    void dropsTheDeniedDimensions() {
+        Relabeler relabeler = new Relabeler(List.of(rule("MyApp").drop(Set.of("RequestId")).build()));
+
+        CloudWatchStreamMetric relabeled = relabeler.relabel(item("MyApp",
+                dimensions("Service", "orders", "RequestId", "r-1", "Stage", "prod")));
+
+        assertEquals(List.of("Service", "Stage"), List.copyOf(relabeled.dimensions().keySet()));
+        assertEquals(dimensions("Service", "orders", "Stage", "prod"), relabeled.dimensions());
+    }
+
+    @Test
+    void hashesValuesIntoBuckets() {
+        Relabeler relabeler = new Relabeler(List.of(rule("MyApp").hash(Map.of("CustomerId", 16)).build()));
+
+        for (int i = 0; i < 100; i++) {
+            String customer = "customer-" + i;
+            CloudWatchStreamMetric relabeled = relabeler.relabel(item("MyApp", dimensions("CustomerId", customer)));
+
+            String bucket = relabeled.dimensions().get("CustomerId");
+            assertEquals(Integer.toString(Math.floorMod(customer.hashCode(), 16)), bucket);
+            // The same value always lands in the same bucket
+            assertEquals(bucket, relabeler.relabel(item("MyApp", dimensions("CustomerId", customer))).dimensions()
+                    .get("CustomerId"));
+        }
+    }
+
+    @Test
+    void rejectsInvalidBuckets() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new Relabeler(List.of(rule(null).hash(Map.of("CustomerId", 0)).build())));
+    }
+
+    @Test
+    void renamesDimensions() {
+        Relabeler relabeler = new Relabeler(List.of(rule(null).rename(Map.of("TableName", "table")).build()));
+
+        CloudWatchStreamMetric relabeled = relabeler.relabel(item("AWS/DynamoDB",
+                dimensions("TableName", "orders", "Operation", "GetItem")));
+
+        assertEquals(dimensions("table", "orders", "Operation", "GetItem"), relabeled.dimensions());
+    }
+
+    @Test
+    void doesNotRenameOntoAnExistingDimension() {
+        Relabeler relabeler = new Relabeler(List.of(rule(null).rename(Map.of("TableName", "Operation")).build()));
+
+        CloudWatchStreamMetric relabeled = relabeler.relabel(item("AWS/DynamoDB",
+                dimensions("TableName", "orders", "Operation", "GetItem")));
+
+        assertEquals(dimensions("TableName", "orders", "Operation", "GetItem"), relabeled.dimensions());
+    }
+
+    @Test
+    void doesNotRenameTwoDimensionsOntoTheSameName() {
+        Relabeler relabeler = new Relabeler(List.of(rule(null)
+                .rename(Map.of("TableName", "resource", "StreamName", "resource")).build()));
+
+        CloudWatchStreamMetric relabeled = relabeler.relabel(item("AWS/DynamoDB",
+                dimensions("TableName", "orders", "StreamName", "orders-stream")));
+
+        assertEquals(dimensions("resource", "orders", "StreamName", "orders-stream"), relabeled.dimensions());
+    }
+
+    @Test
+    void appliesRulesInOrder() {
+        // The second rule sees the dimensions as renamed by the first
+        Relabeler relabeler = new Relabeler(List.of(
+                rule(null).rename(Map.of("TableName", "table")).build(),
+                rule(null).hash(Map.of("table", 4)).build()));
+
+        CloudWatchStreamMetric relabeled = relabeler.relabel(item("AWS/DynamoDB", dimensions("TableName", "orders")));
+
+        assertEquals(Map.of("table", Integer.toString(Math.floorMod("orders".hashCode(), 4))), relabeled.dimensions());
+    }
+
+    @Test
+    void matchesNamespacesExactlyOrByPrefix() {
+        Relabeler relabeler = new Relabeler(List.of(
+                rule("MyApp/*").drop(Set.of("RequestId")).build(),
+                rule("AWS/EC2").drop(Set.of("ImageId")).build()));
+        Map<String, String> dimensions = dimensions("RequestId", "r-1", "ImageId", "ami-1");
+
+        assertEquals(Map.of("ImageId", "ami-1"), relabeler.relabel(item("MyApp/Orders", dimensions)).dimensions());
+        assertEquals(Map.of("ImageId", "ami-1"), relabeler.relabel(item("MyApp/", dimensions)).dimensions());
+        assertEquals(Map.of("RequestId", "r-1"), relabeler.relabel(item("AWS/EC2", dimensions)).dimensions());
+        assertSame(dimensions, relabeler.relabel(item("AWS/EC2Spot", dimensions)).dimensions());
+        assertSame(dimensions, relabeler.relabel(item("MyApp", dimensions)).dimensions());
+        assertSame(dimensions, relabeler.relabel(item(null, dimensions)).dimensions());
+    }
+
+    @Test
+    void appliesRulesWithoutANamespaceEverywhere() {
+        for (String namespace : new String[]{"*", null}) {
+            Relabeler relabeler = new Relabeler(List.of(rule(namespace).drop(Set.of("RequestId")).build()));
+
+            assertEquals(Map.of(), relabeler.relabel(item("MyApp", dimensions("RequestId", "r-1"))).dimensions());
+            assertEquals(Map.of(), relabeler.relabel(item(null, dimensions("RequestId", "r-1"))).dimensions());
+        }
+    }
+
+    @Test
+    void returnsUnchangedItemsAsTheyAre() {
+        Relabeler relabeler = new Relabeler(List.of(rule(null).drop(Set.of("RequestId")).build()));
+        CloudWatchStreamMetric unchanged = item("MyApp", dimensions("Service", "orders"));
+        CloudWatchStreamMetric withoutDimensions = item("MyApp", null);
+
+        assertSame(unchanged, relabeler.relabel(unchanged));
+        assertSame(withoutDimensions, relabeler.relabel(withoutDimensions));
+        assertSame(unchanged, Relabeler.NONE.relabel(unchanged));
+        assertFalse(Relabeler.NONE.rewrites());
+        assertTrue(relabeler.rewrites());
+    }
+
+    @Test
+    void keepsEverythingButTheDimensions() {
+        Relabeler relabeler = new Relabeler(List.of(rule(null).drop(Set.of("RequestId")).build()));
+        CloudWatchStreamMetric item = item("MyApp", dimensions("RequestId", "r-1"));
+
+        CloudWatchStreamMetric relabeled = relabeler.relabel(item);
+
+        assertEquals(new CloudWatchStreamMetric(item.metricsStreamName(), item.accountId(), item.region(),
+                item.namespace(), item.metricName(), Map.of(), item.timestamp(), item.value(), item.unit()), relabeled);
+    }
+
+    @Test
+    void readsRulesFromTheEnvironment() {
+        System.setProperty("RELABEL_RULES", "[{\"namespace\": \"MyApp/*\", \"drop\": [\"RequestId\"]}]");
+        try {
+            Relabeler relabeler = Relabeler.fromEnvironment();
+
+            assertEquals(Map.of(), relabeler.relabel(item("MyApp/Orders", dimensions("RequestId", "r-1"))).dimensions());
+        } finally {
+            System.clearProperty("RELABEL_RULES");
+        }
+    }
+
+    private static Map<String, String> dimensions(String... namesAndValues) {
+        Map<String, String> dimensions = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            dimensions.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return dimensions;
+    }
+
+    private static CloudWatchStreamMetric item(String namespace, Map<String, String> dimensions) {
+        return new CloudWatchStreamMetric("stream", "123456789012", "us-east-1", namespace, "Latency", dimensions,
+                1_700_000_000_000L, new Value(1, 2, 3, 4), "Milliseconds");
+    }
+
+    private static RuleBuilder rule(String namespace) {
+        return new RuleBuilder(namespace);
+    }
+
+    private static final class RuleBuilder {
+        private final String namespace;
+        private Set<String> keep;
+        private Set<String> drop;
+        private Map<String, Integer> hash;
+        private Map<String, String> rename;
+
+        RuleBuilder(String namespace) {
+            this.namespace = namespace;
+        }
+
+        RuleBuilder keep(Set<String> keep) {
+            this.keep = keep;
+            return this;
+        }
+
+        RuleBuilder drop(Set<String> drop) {
+            this.drop = drop;
+            return this;
+        }
+
+        RuleBuilder hash(Map<String, Integer> hash) {
+            this.hash = hash;
+            return this;
+        }
+
+        RuleBuilder rename(Map<String, String> rename) {
+            this.rename = rename;
+            return this;
+        }
+
+        RelabelRule build() {
+            return new RelabelRule(namespace, keep, drop, hash, rename);
+        }
+    }
+}
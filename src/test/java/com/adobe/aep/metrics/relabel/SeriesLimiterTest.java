@@ -0,0 +1,57 @@
+package com.adobe.aep.metrics.relabel;
+
+import com.adobe.aep.metrics.records.CloudWatchStreamMetric;
+import com.adobe.aep.metrics.records.Value;
+import com.adobe.aep.metrics.series.CloudWatchUnit;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeriesLimiterTest {
+
+    @Test
+    void dropsNewSeriesOnceAFamilyReachesTheCap() {
+        SeriesLimiter limiter = new SeriesLimiter(100);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.admit(item("AWS/EC2", "CPUUtilization", "i-" + i), CloudWatchUnit.PERCENT));
+        }
+        assertFalse(limiter.admit(item("AWS/EC2", "CPUUtilization", "i-100"), CloudWatchUnit.PERCENT));
+        assertFalse(limiter.admit(item("AWS/EC2", "CPUUtilization", "i-101"), CloudWatchUnit.PERCENT));
+
+        // Admitted series keep flowing, other families are counted on their own
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.admit(item("AWS/EC2", "CPUUtilization", "i-" + i), CloudWatchUnit.PERCENT));
+        }
+        assertTrue(limiter.admit(item("AWS/EC2", "NetworkIn", "i-100"), CloudWatchUnit.BYTES));
+        assertTrue(limiter.admit(item("Custom/EC2", "CPUUtilization", "i-100"), CloudWatchUnit.PERCENT));
+
+        assertEquals(2, limiter.dropped());
+        assertEquals(Map.of("AWS/EC2/CPUUtilization", 2L), limiter.droppedByFamily());
+    }
+
+    @Test
+    void countsEveryUnitOfAMetricAsASeriesOfItsFamily() {
+        SeriesLimiter limiter = new SeriesLimiter(1);
+
+        assertTrue(limiter.admit(item("AWS/EC2", "CPUUtilization", "i-0"), CloudWatchUnit.PERCENT));
+        assertFalse(limiter.admit(item("AWS/EC2", "CPUUtilization", "i-0"), CloudWatchUnit.NONE));
+    }
+
+    @Test
+    void admitsEverythingWithoutACap() {
+        SeriesLimiter limiter = new SeriesLimiter(0);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.admit(item("AWS/EC2", "CPUUtilization", "i-" + i), CloudWatchUnit.PERCENT));
+        }
+        assertEquals(0, limiter.dropped());
+    }
+
+    private static CloudWatchStreamMetric item(String namespace, String metricName, String instance) {
+        return new CloudWatchStreamMetric("stream", "123456789012", "us-east-1", namespace, metricName,
+                Map.of("InstanceId", instance), 1_700_000_000_000L, new Value(1, 1, 1, 1), null);
+    }
+}
@@ -0,0 +1,60 @@
+package com.adobe.aep.metrics.series;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongSetTest {
+
+    @Test
+    void holdsEveryElementAsItGrows() {
+        LongSet set = new LongSet(4);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long element = random.nextLong();
+            assertEquals(expected.add(element), set.add(element));
+        }
+
+        assertEquals(expected.size(), set.size());
+        expected.forEach(element -> assertTrue(set.contains(element)));
+        assertFalse(set.contains(random.nextLong()));
+    }
+
+    @Test
+    void addsAnElementOnlyOnce() {
+        LongSet set = new LongSet(8);
+
+        assertTrue(set.add(17));
+        assertFalse(set.add(17));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void holdsZero() {
+        LongSet set = new LongSet(8);
+
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertTrue(set.contains(0));
+        assertFalse(set.add(0));
+    }
+
+    @Test
+    void clears() {
+        LongSet set = new LongSet(8);
+        for (long element = 1; element <= 100; element++) {
+            set.add(element * 0x9e3779b97f4a7c15L);
+        }
+
+        set.clear();
+
+        assertEquals(0, set.size());
+        assertFalse(set.contains(0x9e3779b97f4a7c15L));
+        assertTrue(set.add(0x9e3779b97f4a7c15L));
+    }
+}
@@ -0,0 +1,83 @@
+package com.adobe.aep.metrics.series;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeriesIndexTest {
+
+    private static final String ACCOUNT = "123456789012";
+
+    private final SeriesIndex index = new SeriesIndex(8);
+
+    @Test
+    void findsASeriesWhateverTheOrderOfItsDimensions() {
+        Map<String, String> forward = new LinkedHashMap<>();
+        forward.put("LoadBalancer", "app/web");
+        forward.put("AvailabilityZone", "us-east-1a");
+        Map<String, String> backward = new LinkedHashMap<>();
+        backward.put("AvailabilityZone", "us-east-1a");
+        backward.put("LoadBalancer", "app/web");
+
+        Series series = index.get(ACCOUNT, "AWS/ApplicationELB", "RequestCount", CloudWatchUnit.COUNT, forward);
+
+        assertSame(series, index.get(ACCOUNT, "AWS/ApplicationELB", "RequestCount", CloudWatchUnit.COUNT, backward));
+        assertSame(series, index.find(ACCOUNT, "AWS/ApplicationELB", "RequestCount", CloudWatchUnit.COUNT, backward));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void treatsMissingDimensionsAsEmpty() {
+        Series series = index.get(ACCOUNT, "AWS/S3", "BucketSizeBytes", CloudWatchUnit.BYTES, null);
+
+        assertSame(series, index.find(ACCOUNT, "AWS/S3", "BucketSizeBytes", CloudWatchUnit.BYTES, Map.of()));
+    }
+
+    @Test
+    void keepsNamespacesAndUnitsApart() {
+        Map<String, String> dimensions = Map.of("QueueName", "orders");
+        Series sqs = index.get(ACCOUNT, "AWS/SQS", "Errors", CloudWatchUnit.COUNT, dimensions);
+        Series custom = index.get(ACCOUNT, "Custom/Orders", "Errors", CloudWatchUnit.COUNT, dimensions);
+        Series percent = index.get(ACCOUNT, "AWS/SQS", "Errors", CloudWatchUnit.PERCENT, dimensions);
+
+        assertEquals(List.of(sqs, custom, percent), index.series());
+        assertEquals("Custom/Orders", custom.namespace());
+        assertEquals(CloudWatchUnit.PERCENT, percent.unit());
+        assertNotEquals(sqs.fingerprint(), custom.fingerprint());
+        assertNotEquals(sqs.fingerprint(), percent.fingerprint());
+        assertNull(index.find(ACCOUNT, "AWS/SQS", "Errors", CloudWatchUnit.BYTES, dimensions));
+    }
+
+    @Test
+    void sharesASeriesBetweenUnitsWrittenTheSameWay() {
+        Map<String, String> dimensions = Map.of("ApiName", "orders");
+        Series seconds = index.get(ACCOUNT, "AWS/ApiGateway", "Latency", CloudWatchUnit.SECONDS, dimensions);
+        Series count = index.get(ACCOUNT, "AWS/ApiGateway", "Count", CloudWatchUnit.COUNT, dimensions);
+
+        // Durations are all written in seconds, counts and unitless metrics without a unit
+        assertSame(seconds, index.get(ACCOUNT, "AWS/ApiGateway", "Latency", CloudWatchUnit.MILLISECONDS, dimensions));
+        assertSame(seconds, index.find(ACCOUNT, "AWS/ApiGateway", "Latency", CloudWatchUnit.MICROSECONDS, dimensions));
+        assertSame(count, index.find(ACCOUNT, "AWS/ApiGateway", "Count", CloudWatchUnit.NONE, dimensions));
+        assertEquals(SeriesIndex.fingerprint(ACCOUNT, "AWS/ApiGateway", "Latency", CloudWatchUnit.MILLISECONDS,
+                dimensions), seconds.fingerprint());
+        assertEquals(2, index.size());
+        assertEquals(CloudWatchUnit.SECONDS, seconds.unit());
+    }
+
+    @Test
+    void keepsEverySeriesAcrossResizes() {
+        for (int i = 0; i < 1000; i++) {
+            index.get(ACCOUNT, "AWS/EC2", "CPUUtilization", CloudWatchUnit.PERCENT, Map.of("InstanceId", "i-" + i));
+        }
+
+        assertEquals(1000, index.size());
+        for (int i = 0; i < 1000; i++) {
+            Series series = index.find(ACCOUNT, "AWS/EC2", "CPUUtilization", CloudWatchUnit.PERCENT, Map.of("InstanceId", "i-" + i));
+            assertSame(index.series().get(i), series);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.adobe.aep.metrics.spill;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpillStoreTest {
+
+    private static final int HEADER_BYTES = 20;
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysRequestsOldestFirst() throws IOException {
+        SpillStore store = SpillStore.open(config(1 << 20, 4096), CLOCK);
+
+        assertFalse(store.hasPending());
+        assertTrue(store.append(payload("first")));
+        assertTrue(store.append(payload("second")));
+
+        List<SpillStore.Entry> entries = store.pending();
+        assertEquals(List.of("first", "second"), bodies(entries));
+        store.remove(entries.get(0));
+        assertEquals(List.of("second"), bodies(store.pending()));
+        store.remove(entries.get(1));
+        assertFalse(store.hasPending());
+    }
+
+    @Test
+    void leavesThePositionOfTheAppendedBufferAlone() throws IOException {
+        SpillStore store = SpillStore.open(config(1 << 20, 4096), CLOCK);
+        ByteBuffer payload = payload("request");
+
+        store.append(payload);
+
+        assertEquals(0, payload.position());
+        assertEquals(7, payload.remaining());
+    }
+
+    @Test
+    void recoversPendingRequestsLeftByAnEarlierProcess() throws IOException {
+        SpillStore crashed = SpillStore.open(config(1 << 20, 4096), CLOCK);
+        crashed.append(payload("delivered"));
+        crashed.append(payload("pending"));
+        crashed.remove(crashed.pending().get(0));
+
+        SpillStore recovered = SpillStore.open(config(1 << 20, 4096), CLOCK);
+
+        assertTrue(recovered.hasPending());
+        assertEquals(List.of("pending"), bodies(recovered.pending()));
+        // New requests go to a segment of their own, after the recovered ones
+        recovered.append(payload("after"));
+        assertEquals(List.of("pending", "after"), bodies(recovered.pending()));
+        assertEquals(2, segments().size());
+    }
+
+    @Test
+    void stopsRecoveringAtATornAppend() throws IOException {
+        SpillStore crashed = SpillStore.open(config(1 << 20, 4096), CLOCK);
+        crashed.append(payload("complete"));
+        // The length is written last, an append torn before it leaves a zero length behind the body
+        int torn = HEADER_BYTES + "complete".length();
+        write(segments().get(0), torn + HEADER_BYTES, "torn");
+
+        SpillStore recovered = SpillStore.open(config(1 << 20, 4096), CLOCK);
+
+        assertEquals(List.of("complete"), bodies(recovered.pending()));
+    }
+
+    @Test
+    void rejectsEntriesWhoseChecksumDoesNotMatch() throws IOException {
+        SpillStore crashed = SpillStore.open(config(1 << 20, 4096), CLOCK);
+        crashed.append(payload("intact"));
+        crashed.append(payload("corrupt"));
+        crashed.append(payload("behind"));
+        // Flip a byte of the body of the second entry
+        write(segments().get(0), 2 * HEADER_BYTES + "intact".length(), "C");
+
+        SpillStore recovered = SpillStore.open(config(1 << 20, 4096), CLOCK);
+
+        // The entries behind a corrupt one can't be trusted to be framed correctly either
+        assertEquals(List.of("intact"), bodies(recovered.pending()));
+    }
+
+    @Test
+    void dropsRequestsPastTheMaximumAge() throws IOException {
+        SpillStore store = SpillStore.open(config(1 << 20, 4096), CLOCK);
+        store.append(payload("old"));
+
+        SpillStore later = SpillStore.open(config(1 << 20, 4096), Clock.offset(CLOCK, Duration.ofHours(2)));
+
+        assertTrue(later.hasPending());
+        assertEquals(List.of(), later.pending());
+        assertFalse(later.hasPending());
+    }
+
+    @Test
+    void refusesRequestsLargerThanASegment() throws IOException {
+        SpillStore store = SpillStore.open(config(1 << 20, 64), CLOCK);
+
+        assertFalse(store.append(ByteBuffer.wrap(new byte[64 - HEADER_BYTES + 1])));
+        assertTrue(store.append(ByteBuffer.wrap(new byte[64 - HEADER_BYTES])));
+    }
+
+    @Test
+    void evictsTheOldestSegmentsToStayUnderTheMaximumSize() throws IOException {
+        SpillStore store = SpillStore.open(config(256, 128), CLOCK);
+        // Each request fills a segment of its own
+        for (String body : List.of("a", "b", "c", "d")) {
+            store.append(ByteBuffer.wrap((body + "x".repeat(100)).getBytes(StandardCharsets.UTF_8)));
+        }
+
+        assertEquals(2, segments().size());
+        assertEquals(List.of('c', 'd'), bodies(store.pending()).stream().map(body -> body.charAt(0)).toList());
+    }
+
+    @Test
+    void clampsTheSegmentSizeToTheMaximumSize() throws IOException {
+        SpillConfig config = config(1000, 4096);
+        assertEquals(1000, config.segmentBytes());
+
+        SpillStore store = SpillStore.open(config, CLOCK);
+        store.append(payload("first"));
+        store.append(ByteBuffer.wrap(new byte[900]));
+
+        assertEquals(1, segments().size());
+        assertTrue(Files.size(segments().get(0)) <= config.maxBytes());
+    }
+
+    private SpillConfig config(long maxBytes, int segmentBytes) {
+        return new SpillConfig(directory, maxBytes, segmentBytes, Duration.ofHours(1).toMillis());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static ByteBuffer payload(String body) {
+        return ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> bodies(List<SpillStore.Entry> entries) {
+        return entries.stream().map(entry -> StandardCharsets.UTF_8.decode(entry.body()).toString()).toList();
+    }
+
+    private static void write(Path segment, int offset, String bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes.getBytes(StandardCharsets.UTF_8)), offset);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.adobe.aep.metrics.telemetry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmfMetricsSinkTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<String> lines = new ArrayList<>();
+    private final EmfMetricsSink sink = new EmfMetricsSink("MyNamespace", "my-function", lines::add);
+
+    @Test
+    void emitsASingleLine() {
+        sink.emit(metrics());
+
+        assertEquals(1, lines.size());
+        assertFalse(lines.get(0).contains("\n"));
+    }
+
+    @Test
+    void declaresTheMetricsInTheMetadata() throws IOException {
+        long before = System.currentTimeMillis();
+
+        JsonNode document = emit(metrics());
+
+        JsonNode aws = document.get("_aws");
+        assertTrue(aws.get("Timestamp").asLong() >= before);
+        assertEquals(1, aws.get("CloudWatchMetrics").size());
+        JsonNode directive = aws.get("CloudWatchMetrics").get(0);
+        assertEquals("MyNamespace", directive.get("Namespace").asText());
+        assertEquals("[[\"FunctionName\"]]", directive.get("Dimensions").toString());
+        assertEquals("my-function", document.get("FunctionName").asText());
+        // Every declared metric has a value of the same name
+        for (JsonNode definition : directive.get("Metrics")) {
+            String name = definition.get("Name").asText();
+            assertTrue(document.has(name), name);
+            assertTrue(List.of("Count", "Milliseconds", "Bytes").contains(definition.get("Unit").asText()), name);
+        }
+        assertEquals("Milliseconds", unit(directive, "ParseTime"));
+        assertEquals("Bytes", unit(directive, "CompressedBytes"));
+        assertEquals("Count", unit(directive, "Samples"));
+    }
+
+    @Test
+    void writesTheValuesOfTheMetrics() throws IOException {
+        JsonNode document = emit(metrics());
+
+        assertEquals(2, document.get("Records").asLong());
+        assertEquals(300, document.get("Metrics").asLong());
+        assertEquals(7.5, document.get("ParseTime").asDouble());
+        assertEquals(3, document.get("Batches").asLong());
+        assertEquals(120, document.get("Series").asLong());
+        assertEquals(250, document.get("Samples").asLong());
+        assertEquals(40, document.get("CollapsedSamples").asLong());
+        assertEquals(10, document.get("LimitedSamples").asLong());
+        assertEquals(2.0, document.get("EncodeTime").asDouble());
+        assertEquals(4096, document.get("EncodedBytes").asLong());
+        assertEquals(1024, document.get("CompressedBytes").asLong());
+        assertEquals(0.25, document.get("SignTime").asDouble());
+        assertEquals(4, document.get("Requests").asLong());
+        assertEquals(1, document.get("Retries").asLong());
+        assertEquals(1, document.get("TransportErrors").asLong());
+        assertEquals(1, document.get("SpilledBatches").asLong());
+        assertEquals(0, document.get("ReplayedBatches").asLong());
+        assertTrue(document.get("Duration").asDouble() >= 0);
+    }
+
+    @Test
+    void writesTheLatencyHistogramAsValuesAndCounts() throws IOException {
+        JsonNode document = emit(metrics());
+
+        JsonNode latency = document.get("HttpLatency");
+        assertEquals("[5,100,20000]", latency.get("Values").toString());
+        assertEquals("[2,1,1]", latency.get("Counts").toString());
+        assertEquals("Milliseconds", unit(document.get("_aws").get("CloudWatchMetrics").get(0), "HttpLatency"));
+    }
+
+    @Test
+    void countsResponsesPerStatusCode() throws IOException {
+        JsonNode document = emit(metrics());
+
+        assertEquals(2, document.get("Status200").asLong());
+        assertEquals(1, document.get("Status503").asLong());
+        assertEquals("Count", unit(document.get("_aws").get("CloudWatchMetrics").get(0), "Status503"));
+    }
+
+    @Test
+    void leavesOutTheMetricsOfRequestsWhenThereWereNone() throws IOException {
+        JsonNode document = emit(new InvocationMetrics());
+
+        assertFalse(document.has("HttpLatency"));
+        assertEquals(0, document.get("Requests").asLong());
+        for (JsonNode definition : document.get("_aws").get("CloudWatchMetrics").get(0).get("Metrics")) {
+            String name = definition.get("Name").asText();
+            assertFalse(name.equals("HttpLatency") || name.startsWith("Status"), name);
+        }
+    }
+
+    private JsonNode emit(InvocationMetrics metrics) throws IOException {
+        sink.emit(metrics);
+        return objectMapper.readTree(lines.get(lines.size() - 1));
+    }
+
+    private static String unit(JsonNode directive, String name) {
+        for (JsonNode definition : directive.get("Metrics")) {
+            if (definition.get("Name").asText().equals(name)) {
+                return definition.get("Unit").asText();
+            }
+        }
+        return fail("No definition of " + name);
+    }
+
+    private static InvocationMetrics metrics() {
+        InvocationMetrics metrics = new InvocationMetrics();
+        metrics.recordParsed(100, TimeUnit.MICROSECONDS.toNanos(2_500));
+        metrics.recordParsed(200, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.batchDispatched(50, 100);
+        metrics.batchDispatched(50, 100);
+        metrics.batchDispatched(20, 50);
+        metrics.samplesCollapsed(40);
+        metrics.samplesLimited(10);
+        metrics.requestEncoded(4096, 1024, TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.requestSigned(TimeUnit.MICROSECONDS.toNanos(250));
+        metrics.responseReceived(200, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.responseReceived(200, TimeUnit.MILLISECONDS.toNanos(4));
+        metrics.responseReceived(503, TimeUnit.MILLISECONDS.toNanos(80));
+        metrics.requestFailed(TimeUnit.SECONDS.toNanos(30));
+        metrics.retried(1);
+        metrics.batchSpilled();
+        return metrics;
+    }
+}